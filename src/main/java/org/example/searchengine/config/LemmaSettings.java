@@ -0,0 +1,15 @@
+package org.example.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "lemma-settings")
+public class LemmaSettings {
+    private int cacheSize = 100_000;
+    private boolean prewarm = true;
+}
@@ -12,4 +12,7 @@ import org.springframework.stereotype.Component;
 public class RequestSettings {
     private String agent;
     private String referrer;
+    private double requestsPerSecond = 2;
+    private int maxConnectionsPerHost = 4;
+    private int maxBodySize = 5 * 1024 * 1024;
 }
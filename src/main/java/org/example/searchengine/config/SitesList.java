@@ -13,4 +13,18 @@ import java.util.List;
 @ConfigurationProperties(prefix = "indexing-settings")
 public class SitesList {
     private List<Site> sites;
+    private boolean bulkLoad;
+    private boolean incremental;
+    private String stagingDir = System.getProperty("java.io.tmpdir");
+    private String checkpointDir = System.getProperty("java.io.tmpdir");
+    private int checkpointIntervalSeconds = 60;
+    private boolean resumeInterrupted = true;
+    private int lemmaFlushInterval = 100;
+    private int maxInFlightPages = 32;
+    private int maxGlobalInFlightPages = 64;
+    private int frontierMemoryCapacity = 10_000;
+    private int writeQueueCapacity = 16;
+    private int writeBatchSize = 16;
+    private boolean useSitemaps = true;
+    private int maxSitemapUrls = 50_000;
 }
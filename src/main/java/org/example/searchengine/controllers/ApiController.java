@@ -31,13 +31,19 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<IndexingResponse> startIndexing() {
-        return new ResponseEntity<>(indexingService.startIndexing(), HttpStatus.OK);
+    public ResponseEntity<IndexingResponse> startIndexing(@RequestParam(defaultValue = "") String site) {
+        IndexingResponse response = site.isEmpty()
+                ? indexingService.startIndexing()
+                : indexingService.startIndexing(site);
+        return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
     @GetMapping("/stopIndexing")
-    public ResponseEntity<IndexingResponse> stopIndexing() {
-        return new ResponseEntity<>(indexingService.stopIndexing(), HttpStatus.OK);
+    public ResponseEntity<IndexingResponse> stopIndexing(@RequestParam(defaultValue = "") String site) {
+        IndexingResponse response = site.isEmpty()
+                ? indexingService.stopIndexing()
+                : indexingService.stopIndexing(site);
+        return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
     @PostMapping("/indexPage")
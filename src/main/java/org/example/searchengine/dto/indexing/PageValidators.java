@@ -0,0 +1,18 @@
+package org.example.searchengine.dto.indexing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Сведения о ранее проиндексированной странице, по которым при повторном обходе
+ * определяется, изменилась ли она.
+ */
+@Getter
+@AllArgsConstructor
+public class PageValidators {
+    private Long id;
+    private String path;
+    private String etag;
+    private String lastModified;
+    private String contentHash;
+}
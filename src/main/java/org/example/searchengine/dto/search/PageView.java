@@ -0,0 +1,15 @@
+package org.example.searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PageView {
+    private Long id;
+    private Long siteId;
+    private String path;
+    private String title;
+    private String text;
+    private int[] tokenOffsets;
+}
@@ -0,0 +1,10 @@
+package org.example.searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class CacheStatistics {
+    private long hits;
+    private long misses;
+    private int size;
+}
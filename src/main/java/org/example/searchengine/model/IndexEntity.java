@@ -25,4 +25,7 @@ public class IndexEntity {
 
     @Column(name = "\"rank\"", nullable = false)
     private Float rank;
+
+    @Column(name = "positions")
+    private int[] positions;
 }
@@ -31,4 +31,22 @@ public class PageEntity {
 
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
+
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String text;
+
+    @Column(name = "token_offsets")
+    private int[] tokenOffsets;
+
+    @Column(columnDefinition = "TEXT")
+    private String etag;
+
+    @Column(name = "last_modified")
+    private String lastModified;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
 }
@@ -0,0 +1,81 @@
+package org.example.searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Массовая загрузка данных сайта через COPY ... FROM STDIN.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BulkLoadRepository {
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @FunctionalInterface
+    public interface CopyWriter {
+        void write(CopyIn copyIn) throws IOException, SQLException;
+    }
+
+    /**
+     * Резервирует идентификаторы из последовательности identity-колонки id таблицы.
+     */
+    public List<Long> reserveIds(String table, int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence(?, 'id')) FROM generate_series(1, ?)",
+                Long.class, table, count);
+    }
+
+    /**
+     * Выполняет несколько COPY в одной транзакции, в порядке обхода copies.
+     *
+     * @param copies ключ - команда COPY ... FROM STDIN, значение - источник строк для неё
+     */
+    public void copyIn(Map<String, CopyWriter> copies) throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                for (Map.Entry<String, CopyWriter> copy : copies.entrySet()) {
+                    CopyIn copyIn = copyManager.copyIn(copy.getKey());
+                    try {
+                        copy.getValue().write(copyIn);
+                        copyIn.endCopy();
+                    } finally {
+                        if (copyIn.isActive()) {
+                            copyIn.cancelCopy();
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    public void dropPageIndexes() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_page_site_id");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_page_path");
+    }
+
+    public void createPageIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_page_site_id ON page (site_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_page_path ON page (path)");
+    }
+}
@@ -12,7 +12,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import java.util.Collection;
 import java.util.List;
 
-public interface IndexRepository extends JpaRepository<IndexEntity, Long> {
+public interface IndexRepository extends JpaRepository<IndexEntity, Long>, IndexRepositoryCustom {
 
     List<IndexEntity> findAllByLemma(LemmaEntity lemmaEntity);
 
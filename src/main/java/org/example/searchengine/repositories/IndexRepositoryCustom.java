@@ -0,0 +1,35 @@
+package org.example.searchengine.repositories;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface IndexRepositoryCustom {
+
+    /**
+     * Записывает все вхождения лемм нескольких страниц одним пакетом JDBC.
+     * Ранг леммы на странице - число её вхождений.
+     *
+     * @param positionsByPageId ключ - идентификатор страницы, значение - порядковые номера слов
+     *                          страницы по идентификатору леммы
+     */
+    void insertIndexes(Map<Long, Map<Long, int[]>> positionsByPageId);
+
+    /**
+     * Позиции лемм запроса на найденных страницах, для построения сниппетов.
+     * Страницы, проиндексированные до появления позиций, в результат не попадают.
+     *
+     * @return ключ - идентификатор страницы, значение - порядковые номера слов по лемме
+     */
+    Map<Long, Map<String, int[]>> findPositions(Collection<Long> pageIds, Collection<String> lemmas);
+
+    /**
+     * Передаёт все вхождения лемм сайта по возрастанию идентификатора страницы.
+     * Строки читаются из базы порциями и не накапливаются в памяти.
+     */
+    void forEachPosting(Long siteId, PostingConsumer consumer);
+
+    @FunctionalInterface
+    interface PostingConsumer {
+        void accept(long pageId, String lemma, float rank);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class IndexRepositoryCustomImpl implements IndexRepositoryCustom {
+    private static final String INSERT_INDEX_SQL =
+            "INSERT INTO \"index\" (page_id, lemma_id, \"rank\", positions) VALUES (?, ?, ?, ?)";
+    private static final String FIND_POSITIONS_SQL = "SELECT i.page_id, l.lemma, i.positions " +
+            "FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id " +
+            "WHERE i.page_id = ANY (?) AND l.lemma = ANY (?) AND i.positions IS NOT NULL";
+    private static final String FIND_POSTINGS_SQL = "SELECT i.page_id, l.lemma, i.\"rank\" " +
+            "FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ? ORDER BY i.page_id";
+    private static final int POSTINGS_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void insertIndexes(Map<Long, Map<Long, int[]>> positionsByPageId) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<Long, Map<Long, int[]>> page : positionsByPageId.entrySet()) {
+            for (Map.Entry<Long, int[]> entry : page.getValue().entrySet()) {
+                int[] positions = entry.getValue();
+                rows.add(new Object[]{page.getKey(), entry.getKey(), (float) positions.length, positions});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_INDEX_SQL, rows);
+    }
+
+    @Override
+    public Map<Long, Map<String, int[]>> findPositions(Collection<Long> pageIds, Collection<String> lemmas) {
+        Map<Long, Map<String, int[]>> positions = new HashMap<>();
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return positions;
+        }
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_POSITIONS_SQL);
+            statement.setArray(1, connection.createArrayOf("bigint", pageIds.toArray()));
+            statement.setArray(2, connection.createArrayOf("text", lemmas.toArray()));
+            return statement;
+        }, resultSet -> {
+            Array array = resultSet.getArray("positions");
+            Integer[] values = (Integer[]) array.getArray();
+            int[] lemmaPositions = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                lemmaPositions[i] = values[i];
+            }
+            positions.computeIfAbsent(resultSet.getLong("page_id"), key -> new HashMap<>())
+                    .put(resultSet.getString("lemma"), lemmaPositions);
+        });
+        return positions;
+    }
+
+    /**
+     * PostgreSQL читает результат порциями по fetch size только внутри транзакции,
+     * вне её драйвер загружает все строки сразу.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachPosting(Long siteId, PostingConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_POSTINGS_SQL);
+            statement.setFetchSize(POSTINGS_FETCH_SIZE);
+            statement.setLong(1, siteId);
+            return statement;
+        }, resultSet -> {
+            consumer.accept(resultSet.getLong(1), resultSet.getString(2), resultSet.getFloat(3));
+        });
+    }
+}
@@ -11,7 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
-public interface LemmaRepository extends JpaRepository<LemmaEntity, Long> {
+public interface LemmaRepository extends JpaRepository<LemmaEntity, Long>, LemmaRepositoryCustom {
 
     Optional<LemmaEntity> findBySiteAndLemma(SiteEntity siteEntity, String lemma);
 
@@ -36,11 +36,7 @@ public interface LemmaRepository extends JpaRepository<LemmaEntity, Long> {
 
     @Modifying
     @Transactional
-    @Query("UPDATE LemmaEntity l SET l.frequency = l.frequency - 1 WHERE l IN :lemmas")
-    void decrementFrequency(@Param("lemmas") List<LemmaEntity> lemmas);
-
-    @Modifying
-    @Transactional
-    @Query("DELETE FROM LemmaEntity l WHERE l.frequency <= 0")
-    void deleteEmptyLemmas();
+    @Query(value = "DELETE FROM lemma l WHERE l.site_id = :siteId AND l.frequency <= 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM \"index\" i WHERE i.lemma_id = l.id)", nativeQuery = true)
+    void deleteEmptyLemmas(@Param("siteId") Long siteId);
 }
@@ -0,0 +1,14 @@
+package org.example.searchengine.repositories;
+
+import java.util.Map;
+
+public interface LemmaRepositoryCustom {
+
+    /**
+     * Одним запросом добавляет леммы сайта или увеличивает частоту уже существующих.
+     *
+     * @param increments ключ - лемма, значение - на сколько увеличить её частоту
+     * @return идентификаторы лемм
+     */
+    Map<String, Long> upsertLemmas(Long siteId, Map<String, Integer> increments);
+}
@@ -0,0 +1,46 @@
+package org.example.searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class LemmaRepositoryCustomImpl implements LemmaRepositoryCustom {
+    private static final String UPSERT_LEMMAS_SQL = "INSERT INTO lemma (site_id, lemma, frequency) " +
+            "SELECT ?, l.lemma, l.increment FROM unnest(?::text[], ?::integer[]) AS l(lemma, increment) " +
+            "ORDER BY l.lemma " +
+            "ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = lemma.frequency + EXCLUDED.frequency " +
+            "RETURNING id, lemma";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public Map<String, Long> upsertLemmas(Long siteId, Map<String, Integer> increments) {
+        Map<String, Long> lemmaIds = new HashMap<>();
+        if (increments.isEmpty()) {
+            return lemmaIds;
+        }
+
+        String[] lemmas = increments.keySet().toArray(new String[0]);
+        Integer[] values = new Integer[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            values[i] = increments.get(lemmas[i]);
+        }
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(UPSERT_LEMMAS_SQL);
+            statement.setLong(1, siteId);
+            statement.setArray(2, connection.createArrayOf("text", lemmas));
+            statement.setArray(3, connection.createArrayOf("integer", values));
+            return statement;
+        }, resultSet -> {
+            lemmaIds.put(resultSet.getString("lemma"), resultSet.getLong("id"));
+        });
+        return lemmaIds;
+    }
+}
@@ -1,5 +1,7 @@
 package org.example.searchengine.repositories;
 
+import org.example.searchengine.dto.indexing.PageValidators;
+import org.example.searchengine.dto.search.PageView;
 import org.example.searchengine.model.SiteEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -9,11 +11,12 @@ import org.springframework.stereotype.Repository;
 import org.example.searchengine.model.PageEntity;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface PageRepository extends JpaRepository<PageEntity, Long> {
+public interface PageRepository extends JpaRepository<PageEntity, Long>, PageRepositoryCustom {
 
     @Transactional
     @Modifying
@@ -27,6 +30,31 @@ public interface PageRepository extends JpaRepository<PageEntity, Long> {
 
     Optional<PageEntity> findBySiteAndPath(SiteEntity siteEntity, String relUrl);
 
+    @Query("SELECT p.id FROM PageEntity p WHERE p.site = :site AND p.path = :path")
+    List<Long> findIdsBySiteAndPath(@Param("site") SiteEntity siteEntity, @Param("path") String path);
+
+    @Query("SELECT p.id FROM PageEntity p WHERE p.site.id = :siteId")
+    List<Long> findIdsBySiteId(@Param("siteId") Long siteId);
+
+    @Query("SELECT new org.example.searchengine.dto.search.PageView(" +
+            "p.id, p.site.id, p.path, p.title, p.text, p.tokenOffsets) " +
+            "FROM PageEntity p WHERE p.id IN :ids")
+    List<PageView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new org.example.searchengine.dto.indexing.PageValidators(" +
+            "p.id, p.path, p.etag, p.lastModified, p.contentHash) " +
+            "FROM PageEntity p WHERE p.site.id = :siteId")
+    List<PageValidators> findValidatorsBySiteId(@Param("siteId") Long siteId);
+
+    @Query("SELECT p.content FROM PageEntity p WHERE p.id = :id")
+    String findContentById(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PageEntity p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :id")
+    void updateValidators(@Param("id") Long id, @Param("etag") String etag,
+                          @Param("lastModified") String lastModified);
+
     @Modifying
     @Transactional
     @Query(value = "DELETE FROM page WHERE site_id = :siteId", nativeQuery = true)
@@ -0,0 +1,15 @@
+package org.example.searchengine.repositories;
+
+import java.util.List;
+
+public interface PageRepositoryCustom {
+
+    /**
+     * Удаляет страницу и её индекс, уменьшая на единицу частоты лемм страницы.
+     * Леммы с нулевой частотой остаются в таблице, их удаляет
+     * {@link LemmaRepository#deleteEmptyLemmas(Long)}.
+     *
+     * @return леммы, которые встречались на странице
+     */
+    List<String> deletePageWithIndexes(Long pageId);
+}
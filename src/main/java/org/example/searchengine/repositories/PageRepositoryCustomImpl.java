@@ -0,0 +1,32 @@
+package org.example.searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class PageRepositoryCustomImpl implements PageRepositoryCustom {
+    /**
+     * Строки lemma блокируются в порядке лемм, как и при upsert, чтобы параллельная
+     * индексация других страниц сайта не приводила к взаимным блокировкам.
+     */
+    private static final String DELETE_INDEXES_SQL = "WITH locked AS (" +
+            "SELECT l.id FROM \"index\" i JOIN lemma l ON l.id = i.lemma_id " +
+            "WHERE i.page_id = ? ORDER BY l.lemma FOR UPDATE OF l), " +
+            "deleted AS (DELETE FROM \"index\" WHERE page_id = ?) " +
+            "UPDATE lemma SET frequency = frequency - 1 WHERE id IN (SELECT id FROM locked) " +
+            "RETURNING lemma";
+    private static final String DELETE_PAGE_SQL = "DELETE FROM page WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public List<String> deletePageWithIndexes(Long pageId) {
+        List<String> lemmas = jdbcTemplate.queryForList(DELETE_INDEXES_SQL, String.class, pageId, pageId);
+        jdbcTemplate.update(DELETE_PAGE_SQL, pageId);
+        return lemmas;
+    }
+}
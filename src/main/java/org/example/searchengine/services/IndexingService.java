@@ -4,6 +4,8 @@ import org.example.searchengine.dto.indexing.IndexingResponse;
 
 public interface IndexingService {
     IndexingResponse startIndexing();
+    IndexingResponse startIndexing(String siteUrl);
     IndexingResponse stopIndexing();
+    IndexingResponse stopIndexing(String siteUrl);
     IndexingResponse indexPage(String url);
 }
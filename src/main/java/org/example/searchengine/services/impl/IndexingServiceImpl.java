@@ -1,101 +1,215 @@
 package org.example.searchengine.services.impl;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import org.example.searchengine.config.RequestSettings;
 import org.example.searchengine.config.Site;
 import org.example.searchengine.config.SitesList;
 import org.example.searchengine.model.Status;
 import org.example.searchengine.services.IndexingService;
+import org.example.searchengine.util.CrawlBudget;
+import org.example.searchengine.util.HostRateLimiter;
+import org.example.searchengine.util.InvertedIndex;
+import org.example.searchengine.util.LemmaFinder;
+import org.example.searchengine.util.PageFetcher;
 import org.example.searchengine.util.SiteIndexer;
+import org.example.searchengine.util.UrlNormalizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.example.searchengine.dto.ErrorResponse;
 import org.example.searchengine.dto.indexing.IndexingResponse;
 import org.example.searchengine.dto.indexing.IndexingResponseDto;
 import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.repositories.BulkLoadRepository;
 import org.example.searchengine.repositories.IndexRepository;
 import org.example.searchengine.repositories.LemmaRepository;
 import org.example.searchengine.repositories.PageRepository;
 import org.example.searchengine.repositories.SiteRepository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
 public class IndexingServiceImpl implements IndexingService {
+    private static final Pattern ABSOLUTE_URL_PATTERN = Pattern.compile("^https?://[^\\s$.?#].[^\\s]*$");
+    private static final Pattern RELATIVE_URL_PATTERN = Pattern.compile("^/[a-z0-9]*/?(.*)?");
+
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
     private final RequestSettings jsoupRequestSettings;
     private final SitesList sitesList;
-    private ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-    private List<SiteIndexer> siteIndexerList = new ArrayList<>();
+    private final InvertedIndex invertedIndex;
+    private final LemmaFinder lemmaFinder;
+    private final BulkLoadRepository bulkLoadRepository;
+    private final HostRateLimiter hostRateLimiter;
+    private final PageFetcher pageFetcher;
+    private final TransactionTemplate transactionTemplate;
+    private final CrawlBudget crawlBudget;
+    private final AtomicInteger bulkLoadsInProgress = new AtomicInteger();
+    private final ExecutorService lemmatizationPool =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Последний запуск обхода каждого сайта, ключ - адрес сайта.
+     */
+    private final Map<String, SiteIndexer> siteIndexers = new ConcurrentHashMap<>();
+    /**
+     * Сайты, на которых сейчас переиндексируется отдельная страница. Обход сайта и переиндексация
+     * его страницы не выполняются одновременно: у каждого свой словарь лемм, а удаление лемм
+     * с нулевой частотой после переиндексации страницы затронуло бы леммы, на которые
+     * ссылаются ещё не записанные страницы обхода.
+     */
+    private final Set<String> pageIndexingSites = ConcurrentHashMap.newKeySet();
+    /**
+     * Проверка, что сайт не индексируется, и регистрация нового обхода или переиндексации
+     * страницы выполняются под этой блокировкой, чтобы одновременные запросы не запустили
+     * обработку одного сайта дважды.
+     */
+    private final Object siteStateLock = new Object();
 
     @Override
     public IndexingResponse startIndexing() {
-
-        if (pool.isTerminated() && pool.isQuiescent()) {
-            pool = new ForkJoinPool();
-            siteIndexerList.clear();
+        List<SiteIndexer> started = new ArrayList<>();
+        synchronized (siteStateLock) {
+            if (isIndexing() || !pageIndexingSites.isEmpty()) {
+                return new ErrorResponse("Индексация уже запущена");
+            }
+            try {
+                for (Site site : sitesList.getSites()) {
+                    started.add(registerSiteIndexer(site));
+                }
+            } catch (RuntimeException e) {
+                started.forEach(siteIndexer -> siteIndexer.setRunning(false));
+                throw e;
+            }
         }
 
-        if (!pool.isQuiescent()) {
-            return new ErrorResponse("Индексация уже запущена");
+        // сбой запуска одного сайта не должен оставить остальные зарегистрированными, но не запущенными
+        RuntimeException failure = null;
+        for (SiteIndexer siteIndexer : started) {
+            try {
+                startSiteIndexing(siteIndexer);
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
         }
+        if (failure != null) {
+            throw failure;
+        }
+        return new IndexingResponseDto();
+    }
 
-        for (Site site : sitesList.getSites()) {
-            SiteEntity siteEntity = createSiteEntity(site);
-            siteRepository.save(siteEntity);
-            SiteIndexer siteIndexer = createSiteIndexer(siteEntity);
-            siteIndexerList.add(siteIndexer);
-            siteIndexer.startIndexing();
+    @Override
+    public IndexingResponse startIndexing(String siteUrl) {
+        Site site = findConfiguredSite(siteUrl);
+        if (site == null) {
+            return new ErrorResponse("Данный сайт не указан в конфигурационном файле");
         }
+        SiteIndexer siteIndexer;
+        synchronized (siteStateLock) {
+            SiteIndexer current = siteIndexers.get(site.getUrl());
+            if (current != null && current.isRunning()) {
+                return new ErrorResponse("Индексация сайта уже запущена");
+            }
+            if (pageIndexingSites.contains(site.getUrl())) {
+                return new ErrorResponse("Выполняется индексация страницы сайта");
+            }
+            siteIndexer = registerSiteIndexer(site);
+        }
+        startSiteIndexing(siteIndexer);
         return new IndexingResponseDto();
     }
 
     @Override
     public IndexingResponse stopIndexing() {
-        if (pool.isShutdown()) {
+        if (!isIndexing()) {
             return new ErrorResponse("Индексация не запущена");
         }
 
-        boolean quiet;
-        pool.shutdown();
-        try {
-            quiet = pool.awaitTermination(5, TimeUnit.SECONDS);
-            if (quiet) return new IndexingResponseDto();
-        } catch (InterruptedException e) {
-            pool.shutdownNow();
+        for (SiteIndexer siteIndexer : siteIndexers.values()) {
+            siteIndexer.stopIndexing();
         }
+        return new IndexingResponseDto();
+    }
 
-        for (SiteIndexer siteIndexer : siteIndexerList) {
-            siteIndexer.stopIndexing();
+    @Override
+    public IndexingResponse stopIndexing(String siteUrl) {
+        Site site = findConfiguredSite(siteUrl);
+        if (site == null) {
+            return new ErrorResponse("Данный сайт не указан в конфигурационном файле");
+        }
+        SiteIndexer siteIndexer = siteIndexers.get(site.getUrl());
+        if (siteIndexer == null || !siteIndexer.isRunning()) {
+            return new ErrorResponse("Индексация сайта не запущена");
         }
+        siteIndexer.stopIndexing();
         return new IndexingResponseDto();
     }
 
+    /**
+     * Регистрирует обход сайта сразу как выполняющийся: до запуска потока обхода
+     * повторный запрос должен видеть сайт занятым.
+     */
+    private SiteIndexer registerSiteIndexer(Site site) {
+        SiteEntity siteEntity = createSiteEntity(site);
+        siteRepository.save(siteEntity);
+        SiteIndexer siteIndexer = createSiteIndexer(siteEntity);
+        siteIndexer.setRunning(true);
+        siteIndexers.put(site.getUrl(), siteIndexer);
+        return siteIndexer;
+    }
+
+    /**
+     * Если обход не удалось запустить, сайт освобождается для следующего запуска.
+     */
+    private void startSiteIndexing(SiteIndexer siteIndexer) {
+        try {
+            siteIndexer.startIndexing();
+        } catch (RuntimeException e) {
+            siteIndexer.setRunning(false);
+            throw e;
+        }
+    }
+
+    private Site findConfiguredSite(String siteUrl) {
+        String formattedUrl = siteUrl.endsWith("/") ? siteUrl : siteUrl + "/";
+        for (Site site : sitesList.getSites()) {
+            if (site.getUrl().equals(formattedUrl)) {
+                return site;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Скорость обхода сайта при последнем запуске, страниц в секунду.
+     */
+    public double getPagesPerSecond(String siteUrl) {
+        SiteIndexer siteIndexer = siteIndexers.get(siteUrl);
+        return siteIndexer == null ? 0 : siteIndexer.getPagesPerSecond();
+    }
+
     @Override
     public IndexingResponse indexPage(String url) {
         if (url.isEmpty()) {
             return new ErrorResponse("Задан пустой запрос");
         }
 
-        if (!url.matches("^https?:\\/\\/[^\\s$.?#].[^\\s]*$")) {
+        if (!ABSOLUTE_URL_PATTERN.matcher(url).matches()) {
             return new ErrorResponse("Передан относительный URL. " +
                     "Ожидался абсолютный адрес (с указанием протокола http/https)");
         }
 
-        if (pool.isShutdown() || pool.isTerminated()) {
-            pool = new ForkJoinPool();
-            siteIndexerList.clear();
-        }
-
         HashMap<String, SiteEntity> urls = getUrlsForIndexPath(url);
 
         if (urls == null) {
@@ -103,6 +217,18 @@ public class IndexingServiceImpl implements IndexingService {
                     "указанных в конфигурационном файле");
         }
 
+        synchronized (siteStateLock) {
+            for (SiteEntity siteEntity : urls.values()) {
+                SiteIndexer siteIndexer = siteIndexers.get(siteEntity.getUrl());
+                if ((siteIndexer != null && siteIndexer.isRunning())
+                        || pageIndexingSites.contains(siteEntity.getUrl())) {
+                    return new ErrorResponse("Сайт " + siteEntity.getUrl() + " сейчас индексируется, " +
+                            "повторите запрос после окончания индексации");
+                }
+            }
+            urls.values().forEach(siteEntity -> pageIndexingSites.add(siteEntity.getUrl()));
+        }
+
         for (String pageUrl : urls.keySet()) {
             SiteEntity siteEntity = urls.get(pageUrl);
             SiteIndexer siteIndexer = createSiteIndexer(siteEntity);
@@ -111,14 +237,21 @@ public class IndexingServiceImpl implements IndexingService {
         return new IndexingResponseDto();
     }
 
+    /**
+     * Вызывается по окончании переиндексации отдельной страницы сайта.
+     */
+    public void finishPageIndexing(String siteUrl) {
+        pageIndexingSites.remove(siteUrl);
+    }
+
     private HashMap<String, SiteEntity> getUrlsForIndexPath(String url) {
         HashMap<String, SiteEntity> urls = null;
 
-        if (url.matches("^https?://.*/?(.*)?")) {
+        if (UrlNormalizer.normalize(url) != null) {
             urls = getFormattedUrlsByAbsoluteUrl(url);
         }
 
-        if (url.matches("^/[a-z0-9]*/?(.*)?")) {
+        if (RELATIVE_URL_PATTERN.matcher(url).matches()) {
             urls = getFormattedUrlsByRelativeUrl(url);
         }
 
@@ -128,7 +261,7 @@ public class IndexingServiceImpl implements IndexingService {
     private HashMap<String, SiteEntity> getFormattedUrlsByAbsoluteUrl(String url) {
         HashMap<String, SiteEntity> urls = null;
 
-        String rootUrl = getRootUrl(url);
+        String rootUrl = UrlNormalizer.getRootUrl(url);
         for (Site site : sitesList.getSites()) {
             if (site.getUrl().equals(rootUrl)) {
                 SiteEntity siteEntity = createSiteEntity(site);
@@ -142,19 +275,6 @@ public class IndexingServiceImpl implements IndexingService {
         return urls;
     }
 
-    private String getRootUrl(String url) {
-        Pattern pattern = Pattern.compile("https?://[^/]+/?");
-        Matcher matcher = pattern.matcher(url);
-        String rootUrl = "";
-        while (matcher.find()) {
-            rootUrl = matcher.group();
-            if (!rootUrl.matches(".*/$")) {
-                rootUrl = rootUrl + "/";
-            }
-        }
-        return rootUrl;
-    }
-
     private HashMap<String, SiteEntity> getFormattedUrlsByRelativeUrl(String url) {
         HashMap<String, SiteEntity> urls = new HashMap<>();
 
@@ -180,6 +300,7 @@ public class IndexingServiceImpl implements IndexingService {
         indexRepository.deleteBySiteId(siteId);
         pageRepository.deleteBySiteId(siteId);
         lemmaRepository.deleteBySiteId(siteId);
+        invertedIndex.clearSite(siteId);
     }
 
     private SiteEntity createSiteEntity(Site site) {
@@ -196,17 +317,84 @@ public class IndexingServiceImpl implements IndexingService {
     private SiteIndexer createSiteIndexer(SiteEntity siteEntity) {
         SiteIndexer siteIndexer = new SiteIndexer();
         siteIndexer.setIndexingService(this);
-        siteIndexer.setPool(pool);
+        siteIndexer.setLemmatizationPool(lemmatizationPool);
+        siteIndexer.setMaxInFlightPages(sitesList.getMaxInFlightPages());
+        siteIndexer.setFrontierMemoryCapacity(sitesList.getFrontierMemoryCapacity());
+        siteIndexer.setIncremental(sitesList.isIncremental());
         siteIndexer.setSiteRepository(siteRepository);
         siteIndexer.setPageRepository(pageRepository);
         siteIndexer.setJsoupRequestSettings(jsoupRequestSettings);
         siteIndexer.setSiteEntity(siteEntity);
         siteIndexer.setLemmaRepository(lemmaRepository);
         siteIndexer.setIndexRepository(indexRepository);
+        siteIndexer.setInvertedIndex(invertedIndex);
+        siteIndexer.setLemmaFinder(lemmaFinder);
+        siteIndexer.setBulkLoadRepository(bulkLoadRepository);
+        siteIndexer.setBulkLoad(sitesList.isBulkLoad());
+        siteIndexer.setStagingDir(sitesList.getStagingDir());
+        siteIndexer.setLemmaFlushInterval(sitesList.getLemmaFlushInterval());
+        siteIndexer.setHostRateLimiter(hostRateLimiter);
+        siteIndexer.setPageFetcher(pageFetcher);
+        siteIndexer.setTransactionTemplate(transactionTemplate);
+        siteIndexer.setWriteQueueCapacity(sitesList.getWriteQueueCapacity());
+        siteIndexer.setWriteBatchSize(sitesList.getWriteBatchSize());
+        siteIndexer.setCrawlBudget(crawlBudget);
+        siteIndexer.setCheckpointDir(sitesList.getCheckpointDir());
+        siteIndexer.setCheckpointIntervalSeconds(sitesList.getCheckpointIntervalSeconds());
+        siteIndexer.setUseSitemaps(sitesList.isUseSitemaps());
+        siteIndexer.setMaxSitemapUrls(sitesList.getMaxSitemapUrls());
         return siteIndexer;
     }
 
+    /**
+     * Вторичные индексы таблицы page удаляются на время массовой загрузки
+     * и создаются заново, когда загрузка последнего сайта завершена.
+     */
+    public void startBulkLoad() {
+        if (bulkLoadsInProgress.getAndIncrement() == 0) {
+            bulkLoadRepository.dropPageIndexes();
+        }
+    }
+
+    public void finishBulkLoad() {
+        if (bulkLoadsInProgress.decrementAndGet() == 0) {
+            bulkLoadRepository.createPageIndexes();
+        }
+    }
+
     public boolean isIndexing() {
-        return !pool.isQuiescent();
+        return siteIndexers.values().stream().anyMatch(SiteIndexer::isRunning);
+    }
+
+    /**
+     * Сайты, оставшиеся в статусе INDEXING после перезапуска приложения, продолжают обход
+     * с контрольной точки. Если контрольной точки нет, индексация сайта считается неудавшейся.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedIndexing() {
+        for (Site site : sitesList.getSites()) {
+            Optional<SiteEntity> entityOptional = siteRepository.findByUrl(site.getUrl());
+            if (entityOptional.isEmpty() || entityOptional.get().getStatus() != Status.INDEXING) {
+                continue;
+            }
+            SiteEntity siteEntity = entityOptional.get();
+            SiteIndexer siteIndexer = createSiteIndexer(siteEntity);
+            if (sitesList.isResumeInterrupted() && siteIndexer.hasCheckpoint()) {
+                siteIndexers.put(site.getUrl(), siteIndexer);
+                siteIndexer.resumeIndexing();
+            } else {
+                siteEntity.setStatus(Status.FAILED);
+                siteEntity.setLastError("Индексация прервана перезапуском приложения");
+                siteRepository.save(siteEntity);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (SiteIndexer siteIndexer : siteIndexers.values()) {
+            siteIndexer.suspendIndexing();
+        }
+        lemmatizationPool.shutdownNow();
     }
 }
@@ -1,9 +1,9 @@
 package org.example.searchengine.services.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.searchengine.config.SearchSettings;
 import org.example.searchengine.model.SiteEntity;
 import org.example.searchengine.repositories.IndexRepository;
-import org.example.searchengine.repositories.LemmaRepository;
 import org.example.searchengine.repositories.PageRepository;
 import org.example.searchengine.repositories.SiteRepository;
 import org.example.searchengine.services.SearchService;
@@ -12,12 +12,16 @@ import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 import org.example.searchengine.dto.ErrorResponse;
 import org.example.searchengine.dto.search.DetailedDataItem;
+import org.example.searchengine.dto.search.PageView;
 import org.example.searchengine.dto.search.SearchResponse;
 import org.example.searchengine.dto.search.SearchResponseDto;
-import org.example.searchengine.model.IndexEntity;
-import org.example.searchengine.model.LemmaEntity;
 import org.example.searchengine.model.PageEntity;
+import org.example.searchengine.util.Bm25;
+import org.example.searchengine.util.InvertedIndex;
 import org.example.searchengine.util.LemmaFinder;
+import org.example.searchengine.util.PostingList;
+import org.example.searchengine.util.SearchResultCache;
+import org.example.searchengine.util.SiteIndex;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,12 +29,16 @@ import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class SearchServiceImpl implements SearchService {
+    private static final int SNIPPET_WORDS = 30;
+
     private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
     private final PageRepository pageRepository;
-    private LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-    private Float percent = 1F;
+    private final InvertedIndex invertedIndex;
+    private final LemmaFinder lemmaFinder;
+    private final SearchResultCache searchResultCache;
+    private final SearchSettings searchSettings;
+    private final IndexRepository indexRepository;
+
     @Override
     public SearchResponse search(String query, String site, int offset, int limit) {
         if (query.isBlank()) {
@@ -42,141 +50,365 @@ public class SearchServiceImpl implements SearchService {
 
         Set<String> queryLemmas = lemmaFinder.getLemmaSet(query);
 
-        TreeSet<LemmaEntity> lemmaEntities = new TreeSet<>(Comparator.comparing(LemmaEntity::getFrequency));
-        for (String lemma : queryLemmas) {
-            for (SiteEntity siteEntity : siteEntities) {
-                LemmaEntity lemmaEntity = lemmaRepository.findBySiteAndLemma(siteEntity, lemma).orElse(null);
-                int maxFrequency = pageRepository.countBySite(siteEntity);
-                if (lemmaEntity != null && lemmaEntity.getFrequency() < (maxFrequency * percent)) {
-                    lemmaEntities.add(lemmaEntity);
-                }
-            }
+        long[] siteIds = siteEntities.stream().mapToLong(SiteEntity::getId).sorted().toArray();
+        long[] generations = new long[siteIds.length];
+        for (int i = 0; i < siteIds.length; i++) {
+            generations[i] = invertedIndex.getGeneration(siteIds[i]);
         }
-
-        Set<PageEntity> pageEntities = new HashSet<>();
-        for (LemmaEntity lemmaEntity : lemmaEntities) {
-            pageEntities.addAll(getPageEntities(lemmaEntity));
+        long end = (long) Math.max(offset, 0) + Math.max(limit, 0);
+        SearchResultCache.Key cacheKey = SearchResultCache.Key.of(queryLemmas, site);
+        SearchResultCache.RankedPages rankedPages = searchResultCache.get(cacheKey, siteIds, generations);
+        if (rankedPages == null || !rankedPages.covers(end)) {
+            int depth = (int) Math.min(Math.max(end, searchSettings.getCacheDepth()), Integer.MAX_VALUE);
+            rankedPages = rankPages(siteEntities, queryLemmas, depth, siteIds, generations);
+            searchResultCache.put(cacheKey, rankedPages);
         }
 
-        if (pageEntities.isEmpty()) {
+        if (rankedPages.count() == 0) {
             return getEmptySearchResponse();
         }
 
-        List<IndexEntity> allQueryIndexes = indexRepository.findAllByPageInAndLemmaIn(pageEntities, lemmaEntities);
+        Map<Long, SiteEntity> sitesById = siteEntities.stream()
+                .collect(Collectors.toMap(SiteEntity::getId, siteEntity -> siteEntity));
 
-        Map<PageEntity, List<IndexEntity>> indexesByPage = allQueryIndexes.stream()
-                .collect(Collectors.groupingBy(IndexEntity::getPage));
+        int from = Math.min(Math.max(offset, 0), rankedPages.pageIds().length);
+        int to = (int) Math.min(end, rankedPages.pageIds().length);
+        List<Long> pageIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            pageIds.add(rankedPages.pageIds()[i]);
+        }
+        Map<Long, PageView> pagesById = pageRepository.findViewsByIdIn(pageIds).stream()
+                .collect(Collectors.toMap(PageView::getId, pageView -> pageView));
+        Map<Long, Map<String, int[]>> positionsByPage = indexRepository.findPositions(pageIds, queryLemmas);
 
-        Map<PageEntity, Float> pageAbsRelevance = new HashMap<>();
-        float maxAbsRelevance = 0.0f;
+        List<DetailedDataItem> detailedDataItems = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            long pageId = rankedPages.pageIds()[i];
+            PageView pageView = pagesById.get(pageId);
+            if (pageView == null) {
+                continue;
+            }
+            if (pageView.getText() == null) {
+                pageView = parsePageView(pageId);
+            }
+            float relativeRelevance = rankedPages.relevances()[i];
 
-        for (Map.Entry<PageEntity, List<IndexEntity>> entry : indexesByPage.entrySet()) {
-            PageEntity pageEntity = entry.getKey();
-            List<IndexEntity> queryIndexes = entry.getValue();
+            SiteEntity siteEntity = sitesById.get(pageView.getSiteId());
+            DetailedDataItem item = createDataItem(pageView, siteEntity, relativeRelevance, queryLemmas,
+                    positionsByPage.get(pageId));
+            detailedDataItems.add(item);
+        }
 
-            float absRelevance = 0.0f;
-            for (IndexEntity indexEntity : queryIndexes) {
-                absRelevance += indexEntity.getRank();
-            }
+        return getFullSearchResponse(rankedPages.count(), detailedDataItems);
+    }
+
+    private SearchResultCache.RankedPages rankPages(List<SiteEntity> siteEntities, Set<String> queryLemmas, int depth,
+                                                    long[] siteIds, long[] generations) {
+        List<PostingList.Postings> sitePages = new ArrayList<>(siteEntities.size());
+        int count = 0;
+        for (SiteEntity siteEntity : siteEntities) {
+            PostingList.Postings postings = intersectPostings(invertedIndex.getSite(siteEntity.getId()), queryLemmas);
+            sitePages.add(postings);
+            count += postings.size();
+        }
 
-            pageAbsRelevance.put(pageEntity, absRelevance);
+        long[] foundIds = new long[count];
+        float[] foundScores = new float[count];
+        int position = 0;
+        for (PostingList.Postings postings : sitePages) {
+            System.arraycopy(postings.pageIds(), 0, foundIds, position, postings.size());
+            System.arraycopy(postings.ranks(), 0, foundScores, position, postings.size());
+            position += postings.size();
+        }
 
-            if (absRelevance > maxAbsRelevance) {
-                maxAbsRelevance = absRelevance;
+        int[] top = selectTopPages(foundIds, foundScores, depth);
+        long[] pageIds = new long[top.length];
+        float[] relevances = new float[top.length];
+        float maxScore = top.length == 0 ? 0 : foundScores[top[0]];
+        for (int i = 0; i < top.length; i++) {
+            pageIds[i] = foundIds[top[i]];
+            relevances[i] = foundScores[top[i]] / maxScore;
+        }
+        return new SearchResultCache.RankedPages(siteIds, generations, pageIds, relevances, count);
+    }
+
+    /**
+     * Находит страницы сайта, на которых встречаются все леммы запроса, и оценивает их по BM25.
+     * Вклад лемм, встречающихся почти на всех страницах сайта, мал за счёт idf.
+     * Пересечение начинается с самой редкой леммы и прекращается, как только кандидатов не осталось,
+     * поэтому стоимость ограничена длиной самого короткого списка. Число страниц сайта и длины
+     * страниц ведутся в {@link SiteIndex} при индексации и при поиске не вычисляются.
+     *
+     * @return найденные страницы и их оценки
+     */
+    private PostingList.Postings intersectPostings(SiteIndex siteIndex, Set<String> queryLemmas) {
+        PostingList.Postings empty = new PostingList.Postings(new long[0], new float[0]);
+        int pageCount = siteIndex.getPageCount();
+        List<PostingList> postingLists = new ArrayList<>(queryLemmas.size());
+        for (String lemma : queryLemmas) {
+            PostingList postingList = siteIndex.getPostings(lemma);
+            if (postingList == null) {
+                return empty;
             }
+            postingLists.add(postingList);
+        }
+        if (postingLists.isEmpty()) {
+            return empty;
+        }
+        postingLists.sort(Comparator.comparingInt(PostingList::size));
+
+        PostingList.Postings rarest = postingLists.get(0).decode();
+        long[] pageIds = rarest.pageIds();
+        float[] scores = rarest.ranks();
+        int count = rarest.size();
+        float[] lengthNorms = new float[count];
+        siteIndex.getPageLengths(pageIds, count, lengthNorms);
+        float averageLength = siteIndex.getAverageLength();
+        float idf = Bm25.idf(pageCount, count);
+        for (int i = 0; i < count; i++) {
+            lengthNorms[i] = Bm25.lengthNorm(lengthNorms[i], averageLength);
+            scores[i] = Bm25.score(scores[i], idf, lengthNorms[i]);
         }
 
-        List<DetailedDataItem> detailedDataItems = new ArrayList<>();
-        for (Map.Entry<PageEntity, Float> entry : pageAbsRelevance.entrySet()) {
-            PageEntity pageEntity = entry.getKey();
-            float absRev = entry.getValue();
+        for (int i = 1; i < postingLists.size() && count > 0; i++) {
+            PostingList postingList = postingLists.get(i);
+            count = postingList.intersect(pageIds, scores, lengthNorms, count, Bm25.idf(pageCount, postingList.size()));
+        }
+        if (count == pageIds.length) {
+            return new PostingList.Postings(pageIds, scores);
+        }
+        return new PostingList.Postings(Arrays.copyOf(pageIds, count), Arrays.copyOf(scores, count));
+    }
 
-            float relativeRelevance = absRev / maxAbsRelevance;
+    /**
+     * Отбирает k самых релевантных страниц, не сортируя весь набор результатов:
+     * в куче индексов хранится не более k элементов.
+     *
+     * @return индексы страниц в порядке убывания оценки, при равной оценке - по возрастанию идентификатора
+     */
+    private static int[] selectTopPages(long[] pageIds, float[] scores, int depth) {
+        int k = Math.min(depth, pageIds.length);
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < pageIds.length && k > 0; i++) {
+            if (heapSize < k) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, pageIds, scores);
+            } else if (isBetter(i, heap[0], pageIds, scores)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, pageIds, scores);
+            }
+        }
 
-            DetailedDataItem item = createDataItem(pageEntity, relativeRelevance, query);
-            detailedDataItems.add(item);
+        int[] top = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            top[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, pageIds, scores);
         }
+        return top;
+    }
 
-        detailedDataItems.sort(Comparator.comparing(DetailedDataItem::getRelevance)
-                .reversed());
+    private static boolean isBetter(int a, int b, long[] pageIds, float[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && pageIds[a] < pageIds[b]);
+    }
 
-        return getFullSearchResponse(detailedDataItems);
+    /**
+     * В вершине кучи - худшая из отобранных страниц.
+     */
+    private static void siftUp(int[] heap, int index, long[] pageIds, float[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBetter(heap[parent], heap[index], pageIds, scores)) {
+                break;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[index];
+            heap[index] = swap;
+            index = parent;
+        }
     }
 
-    private String createSnippet(String content, String query) {
-        String clearText = Jsoup.parse(content).text();
-        Set<String> queryLemmas = lemmaFinder.getLemmaSet(query);
+    private static void siftDown(int[] heap, int heapSize, long[] pageIds, float[] scores) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && isBetter(heap[worst], heap[left], pageIds, scores)) {
+                worst = left;
+            }
+            if (right < heapSize && isBetter(heap[worst], heap[right], pageIds, scores)) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            int swap = heap[worst];
+            heap[worst] = heap[index];
+            heap[index] = swap;
+            index = worst;
+        }
+    }
 
-        String[] words = clearText.split("\\s+");
-        List<Integer> hitIndices = new ArrayList<>();
+    /**
+     * Сниппет по сохранённым при индексации позициям лемм запроса: выбирается окно из SNIPPET_WORDS слов
+     * с наибольшим числом разных лемм запроса, при равенстве - с наибольшим числом вхождений.
+     * Морфологический разбор не выполняется, стоимость зависит от числа вхождений и размера окна.
+     */
+    private String createSnippet(String text, int[] tokenOffsets, Collection<int[]> lemmaPositions) {
+        int hitCount = 0;
+        for (int[] positions : lemmaPositions) {
+            hitCount += positions.length;
+        }
+        // позиция в старших разрядах, номер леммы в младших: после сортировки вхождения идут по порядку слов
+        long[] hits = new long[hitCount];
+        int lemmaCount = 0;
+        int hit = 0;
+        for (int[] positions : lemmaPositions) {
+            for (int position : positions) {
+                if (position < tokenOffsets.length) {
+                    hits[hit++] = (long) position << 32 | lemmaCount;
+                }
+            }
+            lemmaCount++;
+        }
+        hitCount = hit;
+        if (hitCount == 0) {
+            return text.substring(0, Math.min(text.length(), 200)) + "...";
+        }
+        Arrays.sort(hits, 0, hitCount);
+
+        int[] windowCounts = new int[lemmaCount];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestLast = 0;
+        int bestDistinct = 0;
+        for (int first = 0, last = 0; last < hitCount; last++) {
+            if (windowCounts[(int) hits[last]]++ == 0) {
+                distinct++;
+            }
+            while ((hits[last] >>> 32) - (hits[first] >>> 32) >= SNIPPET_WORDS) {
+                if (--windowCounts[(int) hits[first++]] == 0) {
+                    distinct--;
+                }
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && last - first > bestLast - bestFirst)) {
+                bestDistinct = distinct;
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
 
-        for (int i = 0; i < words.length; i++) {
-            String word = words[i].replaceAll("[^а-яА-ЯeEa-zA-Z]", "");
-            if (word.isEmpty()) continue;
+        int firstWord = (int) (hits[bestFirst] >>> 32);
+        int lastWord = (int) (hits[bestLast] >>> 32);
+        int start = Math.max(0, firstWord - (SNIPPET_WORDS - (lastWord - firstWord + 1)) / 2);
+        int end = Math.min(tokenOffsets.length, start + SNIPPET_WORDS);
+        start = Math.max(0, end - SNIPPET_WORDS);
 
-            Set<String> wordLemmas = lemmaFinder.getLemmaSet(word);
-            if (!Collections.disjoint(wordLemmas, queryLemmas)) {
-                hitIndices.add(i);
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) snippet.append("... ");
+
+        int cursor = tokenOffsets[start];
+        int nextHit = bestFirst;
+        while (nextHit > 0 && (hits[nextHit - 1] >>> 32) >= start) {
+            nextHit--;
+        }
+        for (int i = start; i < end; i++) {
+            int wordStart = tokenOffsets[i];
+            int wordEnd = LemmaFinder.getTokenEnd(text, wordStart);
+            snippet.append(text, cursor, wordStart);
+            while (nextHit < hitCount && (hits[nextHit] >>> 32) < i) {
+                nextHit++;
+            }
+            if (nextHit < hitCount && (hits[nextHit] >>> 32) == i) {
+                snippet.append("<b>").append(text, wordStart, wordEnd).append("</b>");
+            } else {
+                snippet.append(text, wordStart, wordEnd);
+            }
+            cursor = wordEnd;
+        }
+
+        if (end < tokenOffsets.length) snippet.append(" ...");
+
+        return snippet.toString().trim();
+    }
+
+    /**
+     * Сниппет для страниц, проиндексированных до появления позиций лемм: каждое слово
+     * текста проверяется морфологическим разбором.
+     */
+    private String createSnippet(String text, int[] tokenOffsets, Set<String> queryLemmas) {
+        int firstHit = -1;
+        for (int i = 0; i < tokenOffsets.length; i++) {
+            if (isQueryWord(text, tokenOffsets[i], queryLemmas)) {
+                firstHit = i;
+                break;
             }
         }
 
-        if (hitIndices.isEmpty()) {
-            return clearText.substring(0, Math.min(clearText.length(), 200)) + "...";
+        if (firstHit < 0) {
+            return text.substring(0, Math.min(text.length(), 200)) + "...";
         }
 
-        int firstHit = hitIndices.get(0);
         int start = Math.max(0, firstHit - 15);
-        int end = Math.min(words.length, firstHit + 15);
+        int end = Math.min(tokenOffsets.length, firstHit + 15);
 
         StringBuilder snippet = new StringBuilder();
         if (start > 0) snippet.append("... ");
 
+        int cursor = tokenOffsets[start];
         for (int i = start; i < end; i++) {
-            String currentWord = words[i];
-            String strippedWord = currentWord.replaceAll("[^а-яА-ЯeEa-zA-Z]", "");
-
-            Set<String> currentLemmas = lemmaFinder.getLemmaSet(strippedWord);
-            if (!Collections.disjoint(currentLemmas, queryLemmas)) {
-                snippet.append("<b>").append(currentWord).append("</b>");
+            int wordStart = tokenOffsets[i];
+            int wordEnd = LemmaFinder.getTokenEnd(text, wordStart);
+            snippet.append(text, cursor, wordStart);
+            if (i == firstHit || isQueryWord(text, wordStart, queryLemmas)) {
+                snippet.append("<b>").append(text, wordStart, wordEnd).append("</b>");
             } else {
-                snippet.append(currentWord);
+                snippet.append(text, wordStart, wordEnd);
             }
-            snippet.append(" ");
+            cursor = wordEnd;
         }
 
-        if (end < words.length) snippet.append("...");
+        if (end < tokenOffsets.length) snippet.append(" ...");
 
         return snippet.toString().trim();
     }
 
-    private DetailedDataItem createDataItem(PageEntity pageEntity, Float relevance, String query) {
-        DetailedDataItem item = new DetailedDataItem();
-        item.setSite(pageEntity.getSite().getUrl().replaceAll(".$",""));
-        item.setSiteName(pageEntity.getSite().getName());
-        item.setUri(pageEntity.getPath());
-
-        Document document = Jsoup.parse(pageEntity.getContent());
-        String title = document.title();
-        item.setTitle(title);
+    private boolean isQueryWord(String text, int wordStart, Set<String> queryLemmas) {
+        String word = text.substring(wordStart, LemmaFinder.getTokenEnd(text, wordStart));
+        return !Collections.disjoint(lemmaFinder.getLemmaSet(word), queryLemmas);
+    }
 
-        item.setSnippet(createSnippet(document.text(), query));
+    private DetailedDataItem createDataItem(PageView pageView, SiteEntity siteEntity, Float relevance,
+                                            Set<String> queryLemmas, Map<String, int[]> lemmaPositions) {
+        DetailedDataItem item = new DetailedDataItem();
+        item.setSite(siteEntity.getUrl().replaceAll(".$",""));
+        item.setSiteName(siteEntity.getName());
+        item.setUri(pageView.getPath());
+        item.setTitle(pageView.getTitle());
+        item.setSnippet(lemmaPositions == null
+                ? createSnippet(pageView.getText(), pageView.getTokenOffsets(), queryLemmas)
+                : createSnippet(pageView.getText(), pageView.getTokenOffsets(), lemmaPositions.values()));
         item.setRelevance(relevance);
         return item;
     }
 
-    private Set<PageEntity> getPageEntities(LemmaEntity lemmaEntity) {
-        List<IndexEntity> indexEntities = indexRepository.findAllByLemma(lemmaEntity);
-        Set<PageEntity> pageEntities = new HashSet<>();
-        for (IndexEntity indexEntity : indexEntities) {
-            pageEntities.add(indexEntity.getPage());
-        }
-        return pageEntities;
+    /**
+     * Страницы, проиндексированные до появления колонок title/text, разбираются из HTML.
+     */
+    private PageView parsePageView(Long pageId) {
+        PageEntity pageEntity = pageRepository.findById(pageId).orElseThrow();
+        Document document = Jsoup.parse(pageEntity.getContent());
+        String text = document.text();
+        return new PageView(pageId, pageEntity.getSite().getId(), pageEntity.getPath(),
+                document.title(), text, lemmaFinder.getTokenOffsets(text));
     }
 
-    private SearchResponse getFullSearchResponse(List<DetailedDataItem> data) {
+    private SearchResponse getFullSearchResponse(int count, List<DetailedDataItem> data) {
         SearchResponseDto searchResponseDto = new SearchResponseDto();
         searchResponseDto.setResult(true);
-        searchResponseDto.setCount(data.size());
+        searchResponseDto.setCount(count);
         searchResponseDto.setData(data);
         return searchResponseDto;
     }
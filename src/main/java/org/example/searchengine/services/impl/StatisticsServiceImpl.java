@@ -6,7 +6,10 @@ import org.example.searchengine.repositories.LemmaRepository;
 import org.example.searchengine.repositories.PageRepository;
 import org.example.searchengine.repositories.SiteRepository;
 import org.example.searchengine.services.StatisticsService;
+import org.example.searchengine.util.LemmaFinder;
+import org.example.searchengine.util.SearchResultCache;
 import org.springframework.stereotype.Service;
+import org.example.searchengine.dto.statistics.CacheStatistics;
 import org.example.searchengine.dto.statistics.DetailedStatisticsItem;
 import org.example.searchengine.dto.statistics.StatisticsData;
 import org.example.searchengine.dto.statistics.StatisticsResponse;
@@ -23,6 +26,8 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexingServiceImpl indexingService;
+    private final LemmaFinder lemmaFinder;
+    private final SearchResultCache searchResultCache;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -43,6 +48,7 @@ public class StatisticsServiceImpl implements StatisticsService {
             int lemmas = lemmaRepository.countBySite(siteEntity);
             item.setPages(pages);
             item.setLemmas(lemmas);
+            item.setPagesPerSecond(indexingService.getPagesPerSecond(siteEntity.getUrl()));
             item.setStatus(siteEntity.getStatus().name());
             item.setError(siteEntity.getLastError() != null ? siteEntity.getLastError() : "");
             item.setStatusTime(
@@ -60,8 +66,26 @@ public class StatisticsServiceImpl implements StatisticsService {
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
         data.setDetailed(detailed);
+        data.setLemmaCache(getLemmaCacheStatistics());
+        data.setSearchCache(getSearchCacheStatistics());
         response.setStatistics(data);
         response.setResult(true);
         return response;
     }
+
+    private CacheStatistics getLemmaCacheStatistics() {
+        CacheStatistics cacheStatistics = new CacheStatistics();
+        cacheStatistics.setHits(lemmaFinder.getCacheHitCount());
+        cacheStatistics.setMisses(lemmaFinder.getCacheMissCount());
+        cacheStatistics.setSize(lemmaFinder.getCacheSize());
+        return cacheStatistics;
+    }
+
+    private CacheStatistics getSearchCacheStatistics() {
+        CacheStatistics cacheStatistics = new CacheStatistics();
+        cacheStatistics.setHits(searchResultCache.getHitCount());
+        cacheStatistics.setMisses(searchResultCache.getMissCount());
+        cacheStatistics.setSize(searchResultCache.getSize());
+        return cacheStatistics;
+    }
 }
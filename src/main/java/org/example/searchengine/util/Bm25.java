@@ -0,0 +1,32 @@
+package org.example.searchengine.util;
+
+/**
+ * Формулы ранжирования Okapi BM25. Частота леммы на странице - ранг из таблицы index,
+ * длина страницы - сумма рангов всех её лемм.
+ */
+public final class Bm25 {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private Bm25() {
+    }
+
+    /**
+     * @param pageCount      число страниц сайта
+     * @param lemmaFrequency число страниц сайта, на которых встречается лемма
+     */
+    public static float idf(int pageCount, int lemmaFrequency) {
+        return (float) Math.log(1 + (pageCount - lemmaFrequency + 0.5) / (lemmaFrequency + 0.5));
+    }
+
+    /**
+     * Поправка на длину страницы, общая для всех лемм запроса.
+     */
+    public static float lengthNorm(float pageLength, float averageLength) {
+        return averageLength <= 0 ? K1 : K1 * (1 - B + B * pageLength / averageLength);
+    }
+
+    public static float score(float frequency, float idf, float lengthNorm) {
+        return idf * frequency * (K1 + 1) / (frequency + lengthNorm);
+    }
+}
@@ -0,0 +1,266 @@
+package org.example.searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.model.PageEntity;
+import org.example.searchengine.repositories.BulkLoadRepository;
+import org.postgresql.copy.CopyIn;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Режим массовой загрузки для полной переиндексации сайта.
+ * Страницы и вхождения лемм копятся в промежуточных файлах, а по окончании обхода
+ * вместе с леммами передаются в базу командами COPY в одной транзакции.
+ */
+@Slf4j
+public class BulkLoader {
+    private static final String COPY_LEMMA_SQL = "COPY lemma (id, site_id, lemma, frequency) FROM STDIN";
+    private static final String COPY_PAGE_SQL =
+            "COPY page (id, site_id, path, code, content, title, text, token_offsets, etag, last_modified, content_hash) " +
+                    "FROM STDIN";
+    private static final String COPY_INDEX_SQL = "COPY \"index\" (page_id, lemma_id, \"rank\", positions) FROM STDIN";
+
+    private final BulkLoadRepository bulkLoadRepository;
+    private final Long siteId;
+    private final Path pagesFile;
+    private final Path indexesFile;
+    private final DataOutputStream pagesOutput;
+    private final DataOutputStream indexesOutput;
+    private final Map<String, int[]> lemmaFrequencies = new HashMap<>();
+    private final Runnable onComplete;
+    private int pageCount;
+    private boolean completed;
+
+    /**
+     * @param onComplete вызывается один раз, после загрузки или отказа от неё
+     */
+    public BulkLoader(BulkLoadRepository bulkLoadRepository, Long siteId, Path stagingDir, Runnable onComplete)
+            throws IOException {
+        this.bulkLoadRepository = bulkLoadRepository;
+        this.siteId = siteId;
+        this.onComplete = onComplete;
+        Files.createDirectories(stagingDir);
+        pagesFile = Files.createTempFile(stagingDir, "site-" + siteId + "-pages-", ".bin");
+        indexesFile = Files.createTempFile(stagingDir, "site-" + siteId + "-indexes-", ".bin");
+        pagesOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pagesFile)));
+        indexesOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexesFile)));
+    }
+
+    /**
+     * @param lemmas леммы страницы и порядковые номера слов с ними
+     */
+    public synchronized void addPage(PageEntity pageEntity, Map<String, int[]> lemmas) throws IOException {
+        if (completed) {
+            return;
+        }
+        writeString(pagesOutput, pageEntity.getPath());
+        pagesOutput.writeInt(pageEntity.getCode());
+        writeString(pagesOutput, pageEntity.getContent());
+        writeString(pagesOutput, pageEntity.getTitle());
+        writeString(pagesOutput, pageEntity.getText());
+        writeInts(pagesOutput, pageEntity.getTokenOffsets());
+        writeString(pagesOutput, pageEntity.getEtag());
+        writeString(pagesOutput, pageEntity.getLastModified());
+        writeString(pagesOutput, pageEntity.getContentHash());
+
+        indexesOutput.writeInt(lemmas.size());
+        for (Map.Entry<String, int[]> entry : lemmas.entrySet()) {
+            writeString(indexesOutput, entry.getKey());
+            writeInts(indexesOutput, entry.getValue());
+            lemmaFrequencies.computeIfAbsent(entry.getKey(), key -> new int[1])[0]++;
+        }
+        pageCount++;
+    }
+
+    /**
+     * Загружает накопленные данные в базу. Идентификаторы страниц и лемм резервируются
+     * одним запросом на таблицу, строки index ссылаются на них напрямую.
+     */
+    public synchronized void finish() throws IOException, SQLException {
+        if (completed) {
+            return;
+        }
+        pagesOutput.close();
+        indexesOutput.close();
+        try {
+            List<Long> pageIds = pageCount == 0 ? List.of() : bulkLoadRepository.reserveIds("page", pageCount);
+            Map<String, Long> lemmaIds = new HashMap<>();
+            if (!lemmaFrequencies.isEmpty()) {
+                Iterator<Long> ids = bulkLoadRepository.reserveIds("lemma", lemmaFrequencies.size()).iterator();
+                for (String lemma : lemmaFrequencies.keySet()) {
+                    lemmaIds.put(lemma, ids.next());
+                }
+            }
+
+            Map<String, BulkLoadRepository.CopyWriter> copies = new LinkedHashMap<>();
+            copies.put(COPY_LEMMA_SQL, copyIn -> copyLemmas(copyIn, lemmaIds));
+            copies.put(COPY_PAGE_SQL, copyIn -> copyPages(copyIn, pageIds));
+            copies.put(COPY_INDEX_SQL, copyIn -> copyIndexes(copyIn, pageIds, lemmaIds));
+            bulkLoadRepository.copyIn(copies);
+            log.info("Сайт {} загружен в базу: страниц {}, лемм {}", siteId, pageCount, lemmaIds.size());
+        } finally {
+            complete();
+        }
+    }
+
+    public synchronized void discard() {
+        if (completed) {
+            return;
+        }
+        try {
+            pagesOutput.close();
+            indexesOutput.close();
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+        complete();
+    }
+
+    private void complete() {
+        completed = true;
+        deleteStagingFiles();
+        onComplete.run();
+    }
+
+    private void copyLemmas(CopyIn copyIn, Map<String, Long> lemmaIds) throws SQLException {
+        StringBuilder row = new StringBuilder();
+        for (Map.Entry<String, Long> entry : lemmaIds.entrySet()) {
+            row.setLength(0);
+            row.append(entry.getValue()).append('\t').append(siteId).append('\t');
+            appendEscaped(row, entry.getKey());
+            row.append('\t').append(lemmaFrequencies.get(entry.getKey())[0]).append('\n');
+            writeRow(copyIn, row);
+        }
+    }
+
+    private void copyPages(CopyIn copyIn, List<Long> pageIds) throws IOException, SQLException {
+        StringBuilder row = new StringBuilder();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(pagesFile)))) {
+            for (Long pageId : pageIds) {
+                row.setLength(0);
+                row.append(pageId).append('\t').append(siteId).append('\t');
+                appendEscaped(row, readString(input));
+                row.append('\t').append(input.readInt()).append('\t');
+                appendEscaped(row, readString(input));
+                row.append('\t');
+                appendEscaped(row, readString(input));
+                row.append('\t');
+                appendEscaped(row, readString(input));
+                row.append('\t');
+                appendArray(row, readInts(input));
+                for (int i = 0; i < 3; i++) {
+                    row.append('\t');
+                    appendEscaped(row, readString(input));
+                }
+                row.append('\n');
+                writeRow(copyIn, row);
+            }
+        }
+    }
+
+    private void copyIndexes(CopyIn copyIn, List<Long> pageIds, Map<String, Long> lemmaIds)
+            throws IOException, SQLException {
+        StringBuilder row = new StringBuilder();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexesFile)))) {
+            for (Long pageId : pageIds) {
+                int lemmaCount = input.readInt();
+                for (int i = 0; i < lemmaCount; i++) {
+                    Long lemmaId = lemmaIds.get(readString(input));
+                    row.setLength(0);
+                    int[] positions = readInts(input);
+                    row.append(pageId).append('\t').append(lemmaId).append('\t').append((float) positions.length);
+                    row.append('\t');
+                    appendArray(row, positions);
+                    row.append('\n');
+                    writeRow(copyIn, row);
+                }
+            }
+        }
+    }
+
+    private void writeRow(CopyIn copyIn, StringBuilder row) throws SQLException {
+        byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Экранирование значения для текстового формата COPY.
+     */
+    private static void appendEscaped(StringBuilder row, String value) {
+        if (value == null) {
+            row.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+    }
+
+    /**
+     * Литерал массива PostgreSQL для текстового формата COPY.
+     */
+    private static void appendArray(StringBuilder row, int[] values) {
+        row.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) row.append(',');
+            row.append(values[i]);
+        }
+        row.append('}');
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static int[] readInts(DataInputStream input) throws IOException {
+        int[] values = new int[input.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void deleteStagingFiles() {
+        try {
+            Files.deleteIfExists(pagesFile);
+            Files.deleteIfExists(indexesFile);
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.config.SitesList;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Общий для всех сайтов предел числа одновременно обрабатываемых страниц.
+ * Семафор справедливый: разрешения выдаются в порядке запроса, поэтому сайт с большой
+ * очередью не может занять все разрешения, пока их ждут остальные сайты.
+ * Собственный предел каждого сайта задаёт max-in-flight-pages.
+ */
+@Component
+public class CrawlBudget {
+    private final Semaphore pages;
+
+    public CrawlBudget(SitesList sitesList) {
+        this.pages = new Semaphore(Math.max(1, sitesList.getMaxGlobalInFlightPages()), true);
+    }
+
+    public void acquire() throws InterruptedException {
+        pages.acquire();
+    }
+
+    public void release() {
+        pages.release();
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Контрольная точка обхода сайта: отпечатки встреченных адресов и адреса, ожидающие обхода.
+ * Позволяет продолжить обход, прерванный перезапуском приложения, не загружая сайт заново.
+ * Файл сначала пишется во временный и затем переименовывается, поэтому сбой во время записи
+ * не портит предыдущую контрольную точку.
+ */
+@Slf4j
+public class CrawlCheckpoint {
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path path;
+
+    public CrawlCheckpoint(Path checkpointDir, Long siteId) {
+        this.path = checkpointDir.resolve("site-" + siteId + ".checkpoint");
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Страницы, обрабатываемые в момент записи, сохраняются вместе с очередью
+     * и при восстановлении будут обработаны повторно.
+     * Очередь не должна выдавать адреса во время записи, иначе адрес, перешедший
+     * из очереди в обработку, может не попасть ни в один из списков.
+     * Отпечатки встреченных адресов пишутся раньше очереди: адрес, добавленный между ними,
+     * окажется в очереди без отпечатка и при восстановлении будет и поставлен в очередь,
+     * и отмечен встреченным, а не только отмечен встреченным.
+     */
+    public void save(VisitedUrlSet visitedUrls, CrawlFrontier frontier, Collection<FrontierEntry> inFlight)
+            throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            output.writeInt(FORMAT_VERSION);
+            try {
+                visitedUrls.forEachFingerprint(fingerprint -> {
+                    try {
+                        output.writeBoolean(true);
+                        output.writeLong(fingerprint);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            output.writeBoolean(false);
+
+            for (FrontierEntry entry : inFlight) {
+                writeEntry(output, entry);
+            }
+            frontier.snapshot(entry -> writeEntry(output, entry));
+            output.writeBoolean(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Восстанавливает очередь и множество встреченных адресов.
+     *
+     * @return относительные адреса страниц, восстановленных в очередь
+     */
+    public Set<String> restore(VisitedUrlSet visitedUrls, CrawlFrontier frontier) throws IOException {
+        Set<String> pendingPaths = new HashSet<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Неподдерживаемая версия контрольной точки: " + version);
+            }
+            while (input.readBoolean()) {
+                visitedUrls.addFingerprint(input.readLong());
+            }
+            while (input.readBoolean()) {
+                FrontierEntry entry = new FrontierEntry(input.readUTF(), input.readUTF(), input.readInt());
+                if (pendingPaths.add(entry.relUrl())) {
+                    visitedUrls.add(entry.relUrl());
+                    frontier.add(entry);
+                }
+            }
+        }
+        return pendingPaths;
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить контрольную точку обхода {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, FrontierEntry entry) throws IOException {
+        output.writeBoolean(true);
+        output.writeUTF(entry.absUrl());
+        output.writeUTF(entry.relUrl());
+        output.writeInt(entry.depth());
+    }
+}
@@ -0,0 +1,200 @@
+package org.example.searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь страниц, ожидающих обхода. Страницы выдаются в порядке глубины (обход в ширину).
+ * В памяти хранится не больше заданного числа адресов, остальные записываются
+ * во временные файлы, по одному на каждую глубину, и подгружаются по мере освобождения очереди.
+ */
+@Slf4j
+public class CrawlFrontier implements Closeable {
+    private final PriorityQueue<QueuedEntry> memory = new PriorityQueue<>();
+    private final TreeMap<Integer, SpillFile> spilled = new TreeMap<>();
+    private final int memoryCapacity;
+    private final Path spillDir;
+    private final String spillPrefix;
+    private long sequence;
+    private int size;
+    private boolean closed;
+
+    /**
+     * @param memoryCapacity сколько адресов держать в памяти
+     * @param spillDir       каталог для временных файлов
+     * @param spillPrefix    префикс имён временных файлов
+     */
+    public CrawlFrontier(int memoryCapacity, Path spillDir, String spillPrefix) {
+        this.memoryCapacity = Math.max(1, memoryCapacity);
+        this.spillDir = spillDir;
+        this.spillPrefix = spillPrefix;
+    }
+
+    public synchronized void add(FrontierEntry entry) throws IOException {
+        if (closed) {
+            return;
+        }
+        SpillFile spillFile = spilled.get(entry.depth());
+        if (memory.size() < memoryCapacity && (spillFile == null || spillFile.isEmpty())) {
+            memory.add(new QueuedEntry(entry, sequence++));
+        } else {
+            if (spillFile == null) {
+                spillFile = new SpillFile(Files.createTempFile(spillDir,
+                        spillPrefix + "-depth-" + entry.depth() + "-", ".bin"));
+                spilled.put(entry.depth(), spillFile);
+            }
+            spillFile.write(entry);
+        }
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Извлекает страницу с наименьшей глубиной, ожидая её появления не дольше заданного времени.
+     *
+     * @return null, если за время ожидания очередь осталась пустой
+     */
+    public synchronized FrontierEntry poll(long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (size == 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        Map.Entry<Integer, SpillFile> lowestSpilled = spilled.firstEntry();
+        if (lowestSpilled != null && (memory.isEmpty() || lowestSpilled.getKey() <= memory.peek().entry().depth())) {
+            refill(lowestSpilled.getKey(), lowestSpilled.getValue());
+        }
+        size--;
+        return memory.poll().entry();
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Передаёт все ожидающие обхода адреса, не извлекая их из очереди.
+     */
+    public synchronized void snapshot(EntryWriter writer) throws IOException {
+        for (QueuedEntry queuedEntry : memory) {
+            writer.write(queuedEntry.entry());
+        }
+        for (SpillFile spillFile : spilled.values()) {
+            spillFile.forEachRemaining(writer);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (SpillFile spillFile : spilled.values()) {
+            spillFile.delete();
+        }
+        spilled.clear();
+        memory.clear();
+        size = 0;
+    }
+
+    /**
+     * Переносит в память адреса из файла одной глубины, пока в очереди есть место.
+     * Хотя бы один адрес переносится всегда, чтобы следующий poll его нашёл.
+     */
+    private void refill(int depth, SpillFile spillFile) throws IOException {
+        int count = Math.max(1, memoryCapacity - memory.size());
+        for (int i = 0; i < count && !spillFile.isEmpty(); i++) {
+            memory.add(new QueuedEntry(spillFile.read(), sequence++));
+        }
+        if (spillFile.isEmpty()) {
+            spillFile.delete();
+            spilled.remove(depth);
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryWriter {
+        void write(FrontierEntry entry) throws IOException;
+    }
+
+    private record QueuedEntry(FrontierEntry entry, long sequence) implements Comparable<QueuedEntry> {
+        @Override
+        public int compareTo(QueuedEntry other) {
+            int byDepth = Integer.compare(entry.depth(), other.entry.depth());
+            return byDepth != 0 ? byDepth : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Файл адресов одной глубины: запись идёт в конец, чтение - с начала.
+     */
+    private static class SpillFile {
+        private final Path path;
+        private final DataOutputStream output;
+        private DataInputStream input;
+        private long written;
+        private long read;
+
+        SpillFile(Path path) throws IOException {
+            this.path = path;
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        }
+
+        void write(FrontierEntry entry) throws IOException {
+            output.writeUTF(entry.absUrl());
+            output.writeUTF(entry.relUrl());
+            output.writeInt(entry.depth());
+            written++;
+        }
+
+        FrontierEntry read() throws IOException {
+            if (input == null) {
+                input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            }
+            output.flush();
+            read++;
+            return new FrontierEntry(input.readUTF(), input.readUTF(), input.readInt());
+        }
+
+        void forEachRemaining(EntryWriter writer) throws IOException {
+            output.flush();
+            try (DataInputStream snapshotInput =
+                         new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                for (long i = 0; i < written; i++) {
+                    FrontierEntry entry = new FrontierEntry(
+                            snapshotInput.readUTF(), snapshotInput.readUTF(), snapshotInput.readInt());
+                    if (i >= read) {
+                        writer.write(entry);
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return read == written;
+        }
+
+        void delete() {
+            try {
+                output.close();
+                if (input != null) {
+                    input.close();
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить временный файл очереди обхода {}: {}", path, e.getMessage());
+            }
+        }
+    }
+}
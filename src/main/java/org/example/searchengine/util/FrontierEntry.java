@@ -0,0 +1,11 @@
+package org.example.searchengine.util;
+
+/**
+ * Страница, ожидающая обхода.
+ *
+ * @param absUrl абсолютный адрес страницы
+ * @param relUrl путь страницы относительно корня сайта
+ * @param depth  число переходов по ссылкам от главной страницы
+ */
+public record FrontierEntry(String absUrl, String relUrl, int depth) {
+}
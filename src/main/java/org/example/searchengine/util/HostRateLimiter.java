@@ -0,0 +1,98 @@
+package org.example.searchengine.util;
+
+import lombok.RequiredArgsConstructor;
+import org.example.searchengine.config.RequestSettings;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ограничение частоты запросов к каждому хосту: не чаще заданного числа запросов в секунду
+ * и не больше заданного числа одновременных соединений. Учитывает Crawl-delay и Retry-After.
+ * Ожидающий запрос паркует свой виртуальный поток и не занимает поток-носитель.
+ */
+@Component
+@RequiredArgsConstructor
+public class HostRateLimiter {
+    private final RequestSettings requestSettings;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Дожидается своей очереди к хосту и занимает одно соединение.
+     * После запроса соединение освобождается методом {@link #release(String)}.
+     */
+    public void acquire(String host) throws InterruptedException {
+        HostState state = getState(host);
+        long slot = state.reserveSlot();
+        long delay;
+        while ((delay = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, delay);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        state.connections.acquire();
+    }
+
+    public void release(String host) {
+        getState(host).connections.release();
+    }
+
+    /**
+     * Задержка между запросами из robots.txt, если она больше настроенной.
+     * Вызывается при каждом чтении robots.txt: уменьшенная или убранная задержка
+     * возвращает интервал к большему из неё и настроенного.
+     *
+     * @param crawlDelay задержка из robots.txt или null, если её там нет
+     */
+    public void setCrawlDelay(String host, Duration crawlDelay) {
+        HostState state = getState(host);
+        synchronized (state) {
+            state.intervalNanos = crawlDelay == null
+                    ? state.defaultIntervalNanos
+                    : Math.max(state.defaultIntervalNanos, crawlDelay.toNanos());
+        }
+    }
+
+    /**
+     * Приостанавливает все запросы к хосту на время из заголовка Retry-After.
+     */
+    public void retryAfter(String host, Duration delay) {
+        HostState state = getState(host);
+        synchronized (state) {
+            state.nextSlotNanos = Math.max(state.nextSlotNanos, System.nanoTime() + delay.toNanos());
+        }
+    }
+
+    private HostState getState(String host) {
+        return hosts.computeIfAbsent(host, key -> {
+            double requestsPerSecond = requestSettings.getRequestsPerSecond();
+            long intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+            return new HostState(intervalNanos, new Semaphore(Math.max(1, requestSettings.getMaxConnectionsPerHost())));
+        });
+    }
+
+    private static class HostState {
+        private final Semaphore connections;
+        private final long defaultIntervalNanos;
+        private long intervalNanos;
+        private long nextSlotNanos = System.nanoTime();
+
+        HostState(long intervalNanos, Semaphore connections) {
+            this.defaultIntervalNanos = intervalNanos;
+            this.intervalNanos = intervalNanos;
+            this.connections = connections;
+        }
+
+        synchronized long reserveSlot() {
+            long slot = Math.max(System.nanoTime(), nextSlotNanos);
+            nextSlotNanos = slot + intervalNanos;
+            return slot;
+        }
+    }
+}
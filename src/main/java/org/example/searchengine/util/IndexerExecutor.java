@@ -3,164 +3,205 @@ package org.example.searchengine.util;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.example.searchengine.config.RequestSettings;
+import org.example.searchengine.dto.indexing.PageValidators;
 import org.example.searchengine.model.*;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
+import org.example.searchengine.util.PageFetcher.FetchedPage;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.stereotype.Component;
-import org.example.searchengine.repositories.IndexRepository;
 import org.example.searchengine.repositories.LemmaRepository;
 import org.example.searchengine.repositories.PageRepository;
 import org.example.searchengine.repositories.SiteRepository;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Индексация одной страницы сайта: загрузка, разбор, лемматизация и запись в базу.
+ * Вызывается из виртуальных потоков обходчика, разбор и лемматизация выполняются
+ * в отдельном пуле платформенных потоков, запись в базу - пакетами в {@link PageWriter}.
+ */
 @Slf4j
 @Getter
 @Setter
 @Component
-public class IndexerExecutor extends RecursiveTask<Boolean> {
+public class IndexerExecutor {
     private SiteRepository siteRepository;
     private PageRepository pageRepository;
-    private RequestSettings jsoupRequestSettings;
     private SiteEntity siteEntity;
-    private String absUrl;
-    private String relUrl;
-    private Set<String> uniqueUrls;
-    private Boolean indexPath;
     private LemmaFinder lemmaFinder;
     private LemmaRepository lemmaRepository;
-    private IndexRepository indexRepository;
-
-    @Override
-    protected Boolean compute() {
-        if (Thread.currentThread().isInterrupted() ||isCancelled()) {
-            return false;
-        }
-
-        if (uniqueUrls.contains(relUrl)) {
-            return false;
-        }
-        uniqueUrls.add(relUrl);
-
-        if (indexPath && pageRepository.existsBySiteAndPath(siteEntity, relUrl)) {
-            PageEntity pageEntity = pageRepository.findBySiteAndPath(siteEntity, relUrl).get();
-            List<IndexEntity> indexEntities = indexRepository.findAllByPage(pageEntity);
-
-            List<LemmaEntity> lemmaEntities = new ArrayList<>();
-            for (IndexEntity indexEntity : indexEntities) {
-                LemmaEntity lemmaEntity = indexEntity.getLemma();
-                indexRepository.delete(indexEntity);
-                lemmaEntities.add(lemmaEntity);
+    private InvertedIndex invertedIndex;
+    private BulkLoader bulkLoader;
+    private PageWriter pageWriter;
+    private LemmaDictionary lemmaDictionary;
+    private PageFetcher pageFetcher;
+    private ExecutorService lemmatizationPool;
+    /**
+     * Страницы сайта, проиндексированные при прошлом обходе, по относительному адресу.
+     * Заполняется только в режиме инкрементальной индексации, посещённые страницы из него удаляются.
+     */
+    private Map<String, PageValidators> knownPages;
+    /**
+     * Даты изменения страниц из sitemap.xml по относительному адресу.
+     */
+    private Map<String, Instant> sitemapLastmod = Map.of();
+    /**
+     * Время окончания прошлого успешного обхода сайта, null если его не было.
+     */
+    private Instant previousCrawlTime;
+
+    /**
+     * @param indexPath переиндексация отдельной страницы: прежние данные страницы удаляются,
+     *                  ссылки со страницы не собираются
+     * @return ссылки со страницы на другие страницы сайта, ключ - абсолютный адрес, значение - относительный
+     */
+    public Map<String, String> indexPage(String absUrl, String relUrl, boolean indexPath) throws InterruptedException {
+        if (indexPath) {
+            List<Long> pageIds = pageRepository.findIdsBySiteAndPath(siteEntity, relUrl);
+            if (!pageIds.isEmpty()) {
+                pageIds.forEach(this::deletePage);
+                lemmaRepository.deleteEmptyLemmas(siteEntity.getId());
             }
-            lemmaRepository.decrementFrequency(lemmaEntities);
-            lemmaRepository.deleteEmptyLemmas();
-            pageRepository.delete(pageEntity);
         }
 
-        Connection.Response response = getResponse();
-        if (response == null) {
-            return false;
+        // страница остаётся в knownPages, пока не подтверждено, что она не изменилась,
+        // или пока прежняя версия не удалена: иначе страница, которую не удалось загрузить,
+        // не будет удалена по окончании обхода как непосещённая
+        PageValidators knownPage = knownPages == null ? null : knownPages.get(relUrl);
+        if (knownPage != null && isUnchangedSincePreviousCrawl(relUrl)) {
+            knownPages.remove(relUrl);
+            log.info("Страница не изменилась по данным sitemap.xml: {}", absUrl);
+            return getStoredLinks(knownPage, absUrl);
         }
-        Document document = getDocument(response);
-        if (document == null) {
-            return false;
+        FetchedPage page = pageFetcher.fetch(absUrl, knownPage);
+        if (page == null) {
+            return Map.of();
         }
-
-        PageEntity pageEntity = createPageEntity(response, document);
-        pageEntity = pageRepository.save(pageEntity);
-        siteEntity.setStatusTime(LocalDateTime.now());
-        siteRepository.save(siteEntity);
-
-        createLemmasAndIndexes(pageEntity, document);
-
-        log.info("Страница проиндексирована: {}", absUrl);
-
-        if (indexPath) {
-            return true;
+        if (knownPage != null) {
+            if (page.statusCode() == 304) {
+                knownPages.remove(relUrl);
+                log.info("Страница не изменилась: {}", absUrl);
+                return getStoredLinks(knownPage, absUrl);
+            }
+            if (page.contentHash().equals(knownPage.getContentHash())) {
+                knownPages.remove(relUrl);
+                updateValidators(knownPage, page);
+                log.info("Содержимое страницы не изменилось: {}", absUrl);
+                return runInPool(() -> getLinks(page.parse(absUrl)), absUrl, Map.of());
+            }
         }
 
-        Map<String, String> children = getLinks(document);
-
-        List<IndexerExecutor> executors = new ArrayList<>();
-        for (String child : children.keySet()) {
-            IndexerExecutor task = createExecutor(child, children);
-            task.fork();
-            executors.add(task);
+        ParsedPage parsedPage = parse(page, absUrl, relUrl, indexPath);
+        if (parsedPage == null) {
+            return Map.of();
         }
-
-        for (IndexerExecutor executor : executors) {
-            executor.join();
+        if (knownPage != null) {
+            deletePage(knownPage.getId());
+            knownPages.remove(relUrl);
         }
 
-        if (relUrl.equals("/")) {
-            siteEntity.setLastError("");
-            siteEntity.setStatus(Status.INDEXED);
+        PageEntity pageEntity = parsedPage.pageEntity();
+        if (bulkLoader != null) {
+            if (!stagePage(pageEntity, parsedPage.lemmas(), absUrl)) {
+                return Map.of();
+            }
+            siteEntity.setStatusTime(LocalDateTime.now());
             siteRepository.save(siteEntity);
+        } else {
+            pageWriter.write(pageEntity, parsedPage.lemmas());
         }
 
-        return true;
+        log.info("Страница проиндексирована: {}", absUrl);
+        return parsedPage.links();
     }
 
-    private void createLemmasAndIndexes(PageEntity pageEntity, Document document) {
-        String htmlText = lemmaFinder.removeHtmlTags(document);
-        HashMap<String, Integer> lemmas = lemmaFinder.getLemmaMap(htmlText);
+    /**
+     * Удаляет страницу вместе с её индексом и уменьшает частоты её лемм.
+     * Леммы с нулевой частотой не удаляются: во время обхода на них могут ссылаться
+     * ещё не записанные страницы, поэтому они удаляются по окончании обхода.
+     */
+    public void deletePage(Long pageId) {
+        List<String> lemmas = pageRepository.deletePageWithIndexes(pageId);
+        invertedIndex.removePage(siteEntity.getId(), pageId, lemmas);
+    }
 
-        List<IndexEntity> indexEntities = new ArrayList<>();
-        for (String lemma : lemmas.keySet()) {
+    /**
+     * Страница считается неизменившейся, только если по sitemap.xml она изменена
+     * раньше окончания прошлого обхода.
+     */
+    boolean isUnchangedSincePreviousCrawl(String relUrl) {
+        Instant lastmod = sitemapLastmod.get(relUrl);
+        return lastmod != null && previousCrawlTime != null && lastmod.isBefore(previousCrawlTime);
+    }
 
-            lemmaRepository.upsertLemma(siteEntity.getId(), lemma);
+    /**
+     * Ссылки неизменившейся страницы берутся из сохранённого при прошлом обходе HTML.
+     */
+    private Map<String, String> getStoredLinks(PageValidators knownPage, String absUrl) throws InterruptedException {
+        return runInPool(() -> getLinks(Jsoup.parse(pageRepository.findContentById(knownPage.getId()), absUrl)),
+                absUrl, Map.of());
+    }
 
-            LemmaEntity lemmaEntity = lemmaRepository.findBySiteAndLemma(siteEntity, lemma)
-                    .orElseThrow();
+    /**
+     * Разбор HTML и лемматизация требуют процессорного времени,
+     * поэтому выполняются в пуле платформенных потоков, а не в виртуальном потоке загрузки.
+     */
+    private ParsedPage parse(FetchedPage page, String absUrl, String relUrl, boolean indexPath)
+            throws InterruptedException {
+        return runInPool(() -> {
+            Document document = getDocument(page, absUrl);
+            if (document == null) {
+                return null;
+            }
+            PageEntity pageEntity = createPageEntity(page, document, relUrl);
+            HashMap<String, int[]> lemmas = lemmaFinder.getLemmaPositions(pageEntity.getText());
+            Map<String, String> links = indexPath ? Map.of() : getLinks(document);
+            return new ParsedPage(pageEntity, lemmas, links);
+        }, absUrl, null);
+    }
 
-            float rank = lemmas.get(lemma);
-            IndexEntity indexEntity = createIndex(pageEntity,lemmaEntity,rank);
-            indexEntities.add(indexEntity);
+    private <T> T runInPool(Callable<T> task, String absUrl, T fallback) throws InterruptedException {
+        Future<T> future = lemmatizationPool.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            log.error("Ошибка разбора страницы {}: {}", absUrl, e.getCause().getMessage());
+            return fallback;
         }
-
-        indexRepository.saveAll(indexEntities);
     }
 
-    private IndexEntity createIndex(PageEntity pageEntity, LemmaEntity lemmaEntity, Float rank) {
-        IndexEntity indexEntity = new IndexEntity();
-        indexEntity.setPage(pageEntity);
-        indexEntity.setLemma(lemmaEntity);
-        indexEntity.setRank(rank);
-        return indexEntity;
+    private void updateValidators(PageValidators knownPage, FetchedPage page) {
+        String etag = page.etag();
+        String lastModified = page.lastModified();
+        if (!Objects.equals(etag, knownPage.getEtag()) || !Objects.equals(lastModified, knownPage.getLastModified())) {
+            pageRepository.updateValidators(knownPage.getId(), etag, lastModified);
+        }
     }
 
-    private Connection.Response getResponse() {
+    private boolean stagePage(PageEntity pageEntity, Map<String, int[]> lemmas, String absUrl) {
         try {
-            Thread.sleep(2000);
-            return Jsoup.connect(absUrl)
-                    .userAgent(jsoupRequestSettings.getAgent())
-                    .referrer(jsoupRequestSettings.getReferrer())
-                    .execute();
-        } catch (HttpStatusException e) {
-            log.error("Не удалось получить доступ к сайту: {} Статус код: {}", e.getUrl(), e.getStatusCode());
-            return null;
-        } catch (InterruptedException e) {
-            log.error("Выполнено принудительное завершение спящего потока: {}. Откат в добавлении: {}", e.getMessage(), absUrl);
-            return null;
-        } catch (Exception e) {
-            log.error(e.getMessage());
-            return null;
+            bulkLoader.addPage(pageEntity, lemmas);
+            return true;
+        } catch (IOException e) {
+            log.error("Не удалось сохранить страницу во временный файл: {}. {}", absUrl, e.getMessage());
+            return false;
         }
     }
 
-    private Document getDocument(Connection.Response response) {
+    private Document getDocument(FetchedPage page, String absUrl) {
         try {
-            return response.parse();
+            return page.parse(absUrl);
         } catch (IOException e) {
             log.error(e.getMessage());
             return null;
@@ -169,68 +210,36 @@ public class IndexerExecutor extends RecursiveTask<Boolean> {
 
     private Map<String, String> getLinks(Document document) {
         Map<String, String> links = new HashMap<>();
-        Elements elements = document.select("a");
-
-        for (Element element : elements) {
-            String abs = element.attr("abs:href");
-            String rel = getRelUrlFromAbs(abs);
-
-            if (!abs.matches(siteEntity.getUrl() + ".*")) {
-                continue;
-            }
+        String siteUrl = siteEntity.getUrl();
 
-            if (!rel.matches("^/.*")) {
-                continue;
+        for (Element element : document.select("a[href]")) {
+            String abs = UrlNormalizer.normalize(element.absUrl("href"));
+            if (UrlNormalizer.isPageLink(siteUrl, abs)) {
+                links.put(abs, UrlNormalizer.getRelUrl(abs));
             }
-
-            if (rel.matches(".*\\..*")) {
-                if (!rel.matches(".*\\.html")) {
-                    continue;
-                }
-            }
-
-            if (rel.matches(".*#.*")) {
-                continue;
-            }
-
-            links.put(abs, rel);
         }
         return links;
     }
 
-    public String getRelUrlFromAbs(String absUrl) {
-        Pattern pattern = java.util.regex.Pattern.compile("https?://[^/]+(/[^?#]*)");
-        Matcher matcher = pattern.matcher(absUrl);
-
-        if (matcher.find()) {
-            String path = matcher.group(1);
-            return path.isEmpty() ? "/" : path;
-        }
-        return "/";
-    }
-
-    private PageEntity createPageEntity(Connection.Response response, Document document) {
+    private PageEntity createPageEntity(FetchedPage page, Document document, String relUrl) {
         PageEntity entity = new PageEntity();
         entity.setSite(siteEntity);
         entity.setPath(relUrl);
-        entity.setCode(response.statusCode());
+        entity.setCode(page.statusCode());
         entity.setContent(document.outerHtml());
+        entity.setTitle(document.title());
+        String text = lemmaFinder.removeHtmlTags(document);
+        entity.setText(text);
+        entity.setTokenOffsets(lemmaFinder.getTokenOffsets(text));
+        entity.setEtag(page.etag());
+        entity.setLastModified(page.lastModified());
+        entity.setContentHash(page.contentHash());
         return entity;
     }
 
-    public IndexerExecutor createExecutor(String child, Map<String, String> children) {
-        IndexerExecutor executor = new IndexerExecutor();
-        executor.setSiteRepository(siteRepository);
-        executor.setPageRepository(pageRepository);
-        executor.setJsoupRequestSettings(jsoupRequestSettings);
-        executor.setSiteEntity(siteEntity);
-        executor.setAbsUrl(child);
-        executor.setRelUrl(children.get(child));
-        executor.setUniqueUrls(uniqueUrls);
-        executor.setIndexPath(false);
-        executor.setLemmaRepository(lemmaRepository);
-        executor.setIndexRepository(indexRepository);
-        executor.setLemmaFinder(lemmaFinder);
-        return executor;
+    /**
+     * @param lemmas леммы страницы и порядковые номера слов, в которых они встречаются
+     */
+    private record ParsedPage(PageEntity pageEntity, Map<String, int[]> lemmas, Map<String, String> links) {
     }
 }
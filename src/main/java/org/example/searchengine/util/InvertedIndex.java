@@ -0,0 +1,105 @@
+package org.example.searchengine.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.repositories.IndexRepository;
+import org.example.searchengine.repositories.PageRepository;
+import org.example.searchengine.repositories.SiteRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Резидентный инвертированный индекс по всем сайтам.
+ * Строится из таблиц lemma/index при старте и обновляется индексатором по мере записи страниц.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final IndexRepository indexRepository;
+    private final Map<Long, SiteIndex> siteIndexes = new ConcurrentHashMap<>();
+    /**
+     * Счётчик изменений индекса каждого сайта. Увеличивается после каждого изменения,
+     * поэтому результат, вычисленный при одном значении счётчика, актуален, пока оно не изменилось.
+     */
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Загружается раньше остальных обработчиков ApplicationReadyEvent,
+     * в частности раньше возобновления прерванной индексации.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        for (SiteEntity siteEntity : siteRepository.findAll()) {
+            loadSite(siteEntity.getId());
+        }
+    }
+
+    public void loadSite(Long siteId) {
+        SiteIndex siteIndex = new SiteIndex();
+        for (Long pageId : pageRepository.findIdsBySiteId(siteId)) {
+            siteIndex.addPage(pageId, 0);
+        }
+        indexRepository.forEachPosting(siteId, (pageId, lemma, rank) -> {
+            siteIndex.addPosting(lemma, pageId, rank);
+            siteIndex.addPage(pageId, (int) rank);
+        });
+        siteIndexes.put(siteId, siteIndex);
+        nextGeneration(siteId);
+        log.info("Инвертированный индекс сайта {} загружен: страниц {}, лемм {}",
+                siteId, siteIndex.getPageCount(), siteIndex.getLemmaCount());
+    }
+
+    public SiteIndex getSite(Long siteId) {
+        return siteIndexes.computeIfAbsent(siteId, key -> new SiteIndex());
+    }
+
+    /**
+     * @param lemmas леммы страницы и порядковые номера слов с ними, ранг леммы - число вхождений
+     */
+    public void addPage(Long siteId, Long pageId, Map<String, int[]> lemmas) {
+        SiteIndex siteIndex = getSite(siteId);
+        int length = 0;
+        for (Map.Entry<String, int[]> entry : lemmas.entrySet()) {
+            siteIndex.addPosting(entry.getKey(), pageId, entry.getValue().length);
+            length += entry.getValue().length;
+        }
+        siteIndex.addPage(pageId, length);
+        nextGeneration(siteId);
+    }
+
+    public void removePage(Long siteId, Long pageId, Collection<String> lemmas) {
+        SiteIndex siteIndex = getSite(siteId);
+        siteIndex.removePage(pageId);
+        for (String lemma : lemmas) {
+            siteIndex.removePosting(lemma, pageId);
+        }
+        nextGeneration(siteId);
+    }
+
+    public void clearSite(Long siteId) {
+        siteIndexes.put(siteId, new SiteIndex());
+        nextGeneration(siteId);
+    }
+
+    public long getGeneration(Long siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private void nextGeneration(Long siteId) {
+        generations.computeIfAbsent(siteId, key -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.repositories.LemmaRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Словарь лемм сайта на время индексации: лемма - идентификатор строки в таблице lemma.
+ * В базу обращаемся только за новыми леммами, а прирост частот накапливается в памяти
+ * и периодически записывается одним запросом.
+ */
+@Slf4j
+public class LemmaDictionary {
+    private final LemmaRepository lemmaRepository;
+    private final Long siteId;
+    private final int flushInterval;
+    private final Map<String, Long> lemmaIds = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> pendingIncrements = new ConcurrentHashMap<>();
+    private final AtomicInteger pagesSinceFlush = new AtomicInteger();
+
+    /**
+     * @param flushInterval через сколько страниц записывать накопленные частоты в базу
+     */
+    public LemmaDictionary(LemmaRepository lemmaRepository, Long siteId, int flushInterval) {
+        this.lemmaRepository = lemmaRepository;
+        this.siteId = siteId;
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    /**
+     * Возвращает идентификаторы лемм страницы, добавляя новые леммы с нулевой частотой.
+     * Частоты не меняются: страница учитывается в {@link #addPage} только после записи,
+     * чтобы страница, которую не удалось записать, не увеличивала частоты своих лемм.
+     *
+     * @return идентификаторы всех переданных лемм
+     */
+    public Map<String, Long> getLemmaIds(Collection<String> lemmas) {
+        Map<String, Long> result = new HashMap<>();
+        Map<String, Integer> unknownLemmas = new HashMap<>();
+
+        for (String lemma : lemmas) {
+            Long lemmaId = lemmaIds.get(lemma);
+            if (lemmaId == null) {
+                unknownLemmas.put(lemma, 0);
+                continue;
+            }
+            result.put(lemma, lemmaId);
+        }
+
+        if (!unknownLemmas.isEmpty()) {
+            Map<String, Long> insertedIds = lemmaRepository.upsertLemmas(siteId, unknownLemmas);
+            lemmaIds.putAll(insertedIds);
+            result.putAll(insertedIds);
+        }
+        return result;
+    }
+
+    /**
+     * Учитывает леммы записанной страницы: частота каждой увеличивается на единицу.
+     */
+    public void addPage(Collection<String> lemmas) {
+        for (String lemma : lemmas) {
+            pendingIncrements.computeIfAbsent(lemma, key -> new LongAdder()).increment();
+        }
+        if (pagesSinceFlush.incrementAndGet() >= flushInterval) {
+            flush();
+        }
+    }
+
+    /**
+     * Записывает накопленный прирост частот. Используется тот же upsert, что и для новых лемм,
+     * чтобы строки блокировались в одном порядке.
+     */
+    public synchronized void flush() {
+        pagesSinceFlush.set(0);
+        Map<String, Integer> increments = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : pendingIncrements.entrySet()) {
+            long increment = entry.getValue().sum();
+            if (increment > 0) {
+                entry.getValue().add(-increment);
+                increments.put(entry.getKey(), (int) increment);
+            }
+        }
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        try {
+            lemmaRepository.upsertLemmas(siteId, increments);
+        } catch (RuntimeException e) {
+            increments.forEach((lemma, increment) ->
+                    pendingIncrements.computeIfAbsent(lemma, key -> new LongAdder()).add(increment));
+            log.error("Не удалось записать частоты лемм сайта {}: {}", siteId, e.getMessage());
+        }
+    }
+}
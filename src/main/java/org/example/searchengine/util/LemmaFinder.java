@@ -1,66 +1,89 @@
 package org.example.searchengine.util;
 
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.example.searchengine.config.LemmaSettings;
 import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-
+import java.util.regex.Pattern;
+
+/**
+ * Единственный на приложение лемматизатор. Словарь загружается один раз и дальше только читается,
+ * поэтому экземпляр используется одновременно потоками индексации и поиска.
+ */
+@Slf4j
+@Component
 public class LemmaFinder {
-    private final LuceneMorphology luceneMorphology;
-    private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
+    private static final Pattern WORD_TYPE_PATTERN = Pattern.compile("\\W\\w&&[^а-яА-Я\\s]");
     private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ЧАСТ"};
+    private final LemmaSettings lemmaSettings;
+    private final LruCache<String, WordForm> wordFormCache;
+    private volatile LuceneMorphology luceneMorphology;
 
-    public static LemmaFinder getInstance() {
-        LuceneMorphology morphology= null;
-        try {
-            morphology = new RussianLuceneMorphology();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return new LemmaFinder(morphology);
+    public LemmaFinder(LemmaSettings lemmaSettings) {
+        this.lemmaSettings = lemmaSettings;
+        this.wordFormCache = new LruCache<>(lemmaSettings.getCacheSize());
     }
 
-    private LemmaFinder(LuceneMorphology luceneMorphology) {
-        this.luceneMorphology = luceneMorphology;
+    @PostConstruct
+    public void prewarm() {
+        if (lemmaSettings.isPrewarm()) {
+            getMorphology();
+        }
     }
 
-    private LemmaFinder(){
-        throw new RuntimeException("Disallow construct");
+    private LuceneMorphology getMorphology() {
+        LuceneMorphology morphology = luceneMorphology;
+        if (morphology != null) {
+            return morphology;
+        }
+        synchronized (this) {
+            if (luceneMorphology == null) {
+                try {
+                    luceneMorphology = new RussianLuceneMorphology();
+                    log.info("Словарь русской морфологии загружен");
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Не удалось загрузить словарь русской морфологии", e);
+                }
+            }
+            return luceneMorphology;
+        }
     }
 
     /**
-     * Метод разделяет текст на слова, находит все леммы и считает их количество.
+     * Метод разделяет текст на слова, находит все леммы и запоминает, где они встречаются.
      *
      * @param text текст из которого будут выбираться леммы
-     * @return ключ является леммой, а значение количеством найденных лемм
+     * @return ключ является леммой, а значение - порядковыми номерами слов с этой леммой
+     * в порядке возрастания; количество найденных лемм - длина массива
      */
-    public HashMap<String, Integer> getLemmaMap(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
+    public HashMap<String, int[]> getLemmaPositions(String text) {
+        // в нулевом элементе буфера - число записанных позиций
+        HashMap<String, int[]> buffers = new HashMap<>();
+
+        RussianTokenizer.tokenize(text, (buffer, length, position, offset) -> {
+            String lemma = getLemma(new String(buffer, 0, length));
+            if (lemma == null) {
+                return;
             }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
+            int[] positions = buffers.get(lemma);
+            if (positions == null) {
+                positions = new int[4];
+            } else if (positions[0] + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
             }
+            positions[++positions[0]] = position;
+            buffers.put(lemma, positions);
+        });
 
-            String normalWord = normalForms.get(0);
-
-            int count = lemmas.getOrDefault(normalWord, 0);
-            lemmas.put(normalWord, count + 1);
-        }
-
+        HashMap<String, int[]> lemmas = new HashMap<>(buffers.size() * 4 / 3 + 1);
+        buffers.forEach((lemma, positions) -> lemmas.put(lemma, Arrays.copyOfRange(positions, 1, positions[0] + 1)));
         return lemmas;
     }
 
@@ -68,26 +91,91 @@ public class LemmaFinder {
         return document.text();
     }
 
+    /**
+     * @param text текст страницы
+     * @return смещения начала каждого русского слова в тексте, в порядке следования
+     */
+    public int[] getTokenOffsets(String text) {
+        int[][] offsets = {new int[16]};
+        int[] count = {0};
+        RussianTokenizer.tokenize(text, (buffer, length, position, offset) -> {
+            if (count[0] == offsets[0].length) {
+                offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+            }
+            offsets[0][count[0]++] = offset;
+        });
+        return Arrays.copyOf(offsets[0], count[0]);
+    }
+
+    /**
+     * @return позиция, следующая за последней буквой слова, начинающегося в позиции start
+     */
+    public static int getTokenEnd(String text, int start) {
+        int end = start;
+        while (end < text.length() && RussianTokenizer.isRussianLetter(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
 
     /**
+     * Леммы запроса выбираются так же, как при индексации страниц: слово с несколькими
+     * нормальными формами ищется по той же форме, под которой оно записано в индекс.
+     *
      * @param text текст из которого собираем все леммы
      * @return набор уникальных лемм найденных в тексте
      */
     public Set<String> getLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(text);
         Set<String> lemmaSet = new HashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty() && isCorrectWordForm(word)) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
+        RussianTokenizer.tokenize(text, (buffer, length, position, offset) -> {
+            String lemma = getLemma(new String(buffer, 0, length));
+            if (lemma != null) {
+                lemmaSet.add(lemma);
             }
-        }
+        });
         return lemmaSet;
     }
 
+    /**
+     * @return лемма, под которой слово записывается в индекс, или null для служебных частей речи
+     */
+    private String getLemma(String word) {
+        WordForm wordForm = getWordForm(word);
+        if (wordForm.particle() || !wordForm.correctForm() || wordForm.normalForms().isEmpty()) {
+            return null;
+        }
+        return wordForm.normalForms().get(0);
+    }
+
+    /**
+     * Результаты морфологического разбора словоформы кэшируются:
+     * на страницах и в сниппетах раз за разом встречаются одни и те же слова.
+     */
+    private WordForm getWordForm(String word) {
+        return wordFormCache.get(word, this::analyzeWordForm);
+    }
+
+    private WordForm analyzeWordForm(String word) {
+        LuceneMorphology morphology = getMorphology();
+        List<String> wordBaseForms = morphology.getMorphInfo(word);
+        return new WordForm(
+                anyWordBaseBelongToParticle(wordBaseForms),
+                isCorrectWordForm(wordBaseForms),
+                List.copyOf(morphology.getNormalForms(word)));
+    }
+
+    public long getCacheHitCount() {
+        return wordFormCache.getHitCount();
+    }
+
+    public long getCacheMissCount() {
+        return wordFormCache.getMissCount();
+    }
+
+    public int getCacheSize() {
+        return wordFormCache.size();
+    }
+
     private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
         return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
     }
@@ -101,20 +189,15 @@ public class LemmaFinder {
         return false;
     }
 
-    private String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-яё\\s])", " ")
-                .trim()
-                .split("\\s+");
-    }
-
-    private boolean isCorrectWordForm(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
+    private boolean isCorrectWordForm(List<String> wordInfo) {
         for (String morphInfo : wordInfo) {
-            if (morphInfo.matches(WORD_TYPE_REGEX)) {
+            if (WORD_TYPE_PATTERN.matcher(morphInfo).matches()) {
                 return false;
             }
         }
         return true;
     }
+
+    private record WordForm(boolean particle, boolean correctForm, List<String> normalForms) {
+    }
 }
@@ -0,0 +1,125 @@
+package org.example.searchengine.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасный LRU-кэш ограниченного размера.
+ * Ключи распределяются по сегментам, каждый сегмент блокируется отдельно.
+ */
+public class LruCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final List<Segment<K, V>> segments = new ArrayList<>(SEGMENTS);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize наибольшее число значений; 0 отключает кэш, значения вычисляются при каждом обращении
+     */
+    public LruCache(int maxSize) {
+        int segmentSize = maxSize <= 0 ? 0 : Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new Segment<>(segmentSize));
+        }
+    }
+
+    /**
+     * Возвращает значение из кэша, а при его отсутствии вычисляет и запоминает.
+     * Вычисление выполняется вне блокировки сегмента.
+     */
+    public V get(K key, Function<K, V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+
+        misses.increment();
+        value = loader.apply(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+        return value;
+    }
+
+    public V getIfPresent(K key) {
+        return getIfPresent(key, value -> true);
+    }
+
+    /**
+     * Возвращает значение из кэша, если оно есть и ещё действительно.
+     * Недействительное значение удаляется и учитывается как промах.
+     */
+    public V getIfPresent(K key, Predicate<V> isValid) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+            if (value != null && !isValid.test(value)) {
+                segment.remove(key);
+                value = null;
+            }
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments.get(hash & (SEGMENTS - 1));
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
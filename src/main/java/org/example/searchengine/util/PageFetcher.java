@@ -0,0 +1,192 @@
+package org.example.searchengine.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.config.RequestSettings;
+import org.example.searchengine.dto.indexing.PageValidators;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Загрузка страниц сайта. До чтения тела проверяются Content-Type и Content-Length,
+ * тело читается потоком и не больше max-body-size байт: страницы не того типа и слишком
+ * большие страницы пропускаются, не занимая память. Сжатие gzip и deflate снимает Jsoup.
+ * Кодировка берётся из Content-Type, а если её там нет - определяется парсером по BOM и meta.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PageFetcher {
+    private static final int MAX_RETRIES = 3;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(5);
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final RequestSettings requestSettings;
+    private final HostRateLimiter hostRateLimiter;
+
+    /**
+     * Загруженная страница.
+     *
+     * @param body    тело ответа, пустое для 304
+     * @param charset кодировка из Content-Type, null если не указана
+     */
+    public record FetchedPage(int statusCode, byte[] body, String charset,
+                              String etag, String lastModified, String contentHash) {
+
+        public Document parse(String baseUri) throws IOException {
+            return Jsoup.parse(new ByteArrayInputStream(body), charset, baseUri);
+        }
+    }
+
+    /**
+     * @param knownPage если страница уже проиндексирована, запрос отправляется условным
+     *                  и сервер может ответить 304 без тела
+     * @return null, если страницу не удалось загрузить или она не подходит для индексации
+     */
+    public FetchedPage fetch(String absUrl, PageValidators knownPage) {
+        try {
+            String host = URI.create(absUrl).getHost();
+            for (int attempt = 0; ; attempt++) {
+                hostRateLimiter.acquire(host);
+                try {
+                    Connection.Response response = connect(absUrl, knownPage).execute();
+                    try (InputStream body = response.bodyStream()) {
+                        int statusCode = response.statusCode();
+                        if ((statusCode == 429 || statusCode == 503) && attempt < MAX_RETRIES) {
+                            hostRateLimiter.retryAfter(host, getRetryAfter(response));
+                            continue;
+                        }
+                        if (statusCode >= 400) {
+                            log.error("Не удалось получить доступ к сайту: {} Статус код: {}", absUrl, statusCode);
+                            return null;
+                        }
+                        if (statusCode == 304) {
+                            return new FetchedPage(statusCode, new byte[0], null,
+                                    response.header("ETag"), response.header("Last-Modified"), null);
+                        }
+                        return readPage(absUrl, response, body);
+                    }
+                } finally {
+                    hostRateLimiter.release(host);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Выполнено принудительное завершение ожидающего потока: {}. Откат в добавлении: {}", e.getMessage(), absUrl);
+            return null;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return null;
+        }
+    }
+
+    private Connection connect(String absUrl, PageValidators knownPage) {
+        Connection connection = Jsoup.connect(absUrl)
+                .userAgent(requestSettings.getAgent())
+                .referrer(requestSettings.getReferrer())
+                .ignoreHttpErrors(true)
+                .ignoreContentType(true)
+                .maxBodySize(0);
+        if (knownPage != null && knownPage.getEtag() != null) {
+            connection.header("If-None-Match", knownPage.getEtag());
+        }
+        if (knownPage != null && knownPage.getLastModified() != null) {
+            connection.header("If-Modified-Since", knownPage.getLastModified());
+        }
+        return connection;
+    }
+
+    private FetchedPage readPage(String absUrl, Connection.Response response, InputStream body) throws IOException {
+        String contentType = response.contentType();
+        if (contentType != null && !isHtml(contentType)) {
+            log.info("Страница пропущена, тип содержимого {}: {}", contentType, absUrl);
+            return null;
+        }
+        long maxBodySize = requestSettings.getMaxBodySize();
+        long contentLength = getContentLength(response);
+        if (contentLength > maxBodySize) {
+            log.info("Страница пропущена, размер {} байт больше допустимого: {}", contentLength, absUrl);
+            return null;
+        }
+
+        MessageDigest digest = createDigest();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                contentLength > 0 ? (int) contentLength : READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (output.size() + read > maxBodySize) {
+                log.info("Страница пропущена, размер больше {} байт: {}", maxBodySize, absUrl);
+                return null;
+            }
+            output.write(buffer, 0, read);
+            digest.update(buffer, 0, read);
+        }
+        return new FetchedPage(response.statusCode(), output.toByteArray(), response.charset(),
+                response.header("ETag"), response.header("Last-Modified"),
+                HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static boolean isHtml(String contentType) {
+        String mimeType = contentType.toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/html") || mimeType.startsWith("application/xhtml+xml");
+    }
+
+    /**
+     * Для сжатого ответа Content-Length - размер сжатого тела, поэтому он не проверяется:
+     * предел применяется при чтении распакованного потока.
+     */
+    private static long getContentLength(Connection.Response response) {
+        String contentLength = response.header("Content-Length");
+        if (contentLength == null || response.header("Content-Encoding") != null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Duration getRetryAfter(Connection.Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(), date);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+}
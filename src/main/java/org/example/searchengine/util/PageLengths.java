@@ -0,0 +1,153 @@
+package org.example.searchengine.util;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Длины страниц сайта (число вхождений лемм) для ранжирования BM25.
+ * Открытая адресация на примитивных массивах без упаковки ключей и значений,
+ * чтение при поиске и изменение при индексации разделены блокировкой чтения-записи.
+ * Идентификатор страницы 0 зарезервирован под пустую ячейку: страницам базы он не выдаётся.
+ */
+public class PageLengths {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size;
+    private long totalLength;
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getTotalLength() {
+        lock.readLock().lock();
+        try {
+            return totalLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Заполняет длины страниц за одно взятие блокировки. Для неизвестных страниц длина 0.
+     */
+    public void getLengths(long[] pageIds, int count, float[] lengths) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = find(pageIds[i]);
+                lengths[i] = slot < 0 ? 0 : values[slot];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Увеличивает длину страницы, добавляя страницу при необходимости.
+     */
+    public void add(long pageId, int delta) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(pageId);
+            if (slot < 0) {
+                slot = insert(pageId);
+            }
+            values[slot] += delta;
+            totalLength += delta;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long pageId) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(pageId);
+            if (slot < 0) {
+                return;
+            }
+            totalLength -= values[slot];
+            size--;
+            deleteSlot(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int find(long pageId) {
+        int mask = keys.length - 1;
+        for (int slot = home(pageId, mask); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == pageId) {
+                return slot;
+            }
+            if (keys[slot] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private int insert(long pageId) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int slot = home(pageId, mask);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = pageId;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Удаление со сдвигом следующих ключей цепочки на освободившееся место, без меток удаления.
+     */
+    private void deleteSlot(int hole) {
+        int mask = keys.length - 1;
+        for (int slot = (hole + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            int home = home(keys[slot], mask);
+            boolean movable = slot > hole ? (home <= hole || home > slot) : (home <= hole && home > slot);
+            if (movable) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) {
+                continue;
+            }
+            int slot = home(oldKeys[i], mask);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int home(long pageId, int mask) {
+        long hash = pageId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
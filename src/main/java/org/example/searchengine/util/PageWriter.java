@@ -0,0 +1,209 @@
+package org.example.searchengine.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.model.PageEntity;
+import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.repositories.IndexRepository;
+import org.example.searchengine.repositories.PageRepository;
+import org.example.searchengine.repositories.SiteRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Последняя стадия обработки страниц: запись в базу.
+ * Потоки обхода кладут разобранные страницы в ограниченную очередь, один поток записи сайта
+ * забирает из неё сразу несколько страниц и записывает их одной транзакцией.
+ * Поток обхода ждёт записи своей страницы, поэтому, когда база не успевает, очередь
+ * заполняется, потоки обхода не освобождают разрешения и загрузка новых страниц приостанавливается.
+ */
+@Slf4j
+public class PageWriter implements AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+
+    private final PageRepository pageRepository;
+    private final IndexRepository indexRepository;
+    private final SiteRepository siteRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final SiteEntity siteEntity;
+    private final BlockingQueue<PendingPage> queue;
+    private final int batchSize;
+    private final Thread writerThread;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private record PendingPage(PageEntity pageEntity, Map<String, int[]> lemmas, CompletableFuture<Void> written) {
+    }
+
+    /**
+     * @param queueCapacity сколько разобранных страниц может ожидать записи; чтобы очередь могла
+     *                      заполниться и приостановить загрузку, она должна быть меньше числа
+     *                      одновременно обрабатываемых страниц
+     * @param batchSize     сколько страниц записывать одной транзакцией
+     */
+    public PageWriter(PageRepository pageRepository, IndexRepository indexRepository, SiteRepository siteRepository,
+                      TransactionTemplate transactionTemplate, LemmaDictionary lemmaDictionary,
+                      InvertedIndex invertedIndex, SiteEntity siteEntity, int queueCapacity, int batchSize) {
+        this.pageRepository = pageRepository;
+        this.indexRepository = indexRepository;
+        this.siteRepository = siteRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.lemmaDictionary = lemmaDictionary;
+        this.invertedIndex = invertedIndex;
+        this.siteEntity = siteEntity;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.writerThread = Thread.ofVirtual().name("page-writer-" + siteEntity.getId()).start(this::run);
+    }
+
+    /**
+     * Ставит страницу в очередь записи и ждёт, пока транзакция с ней будет зафиксирована.
+     */
+    public void write(PageEntity pageEntity, Map<String, int[]> lemmas) throws InterruptedException {
+        PendingPage page = new PendingPage(pageEntity, lemmas, new CompletableFuture<>());
+        // проверка и постановка в очередь под блокировкой чтения: после close() страница
+        // не может попасть в очередь, которую поток записи уже не разберёт
+        closeLock.readLock().lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Запись страниц сайта " + siteEntity.getUrl() + " завершена");
+            }
+            queue.put(page);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        try {
+            page.written().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Дописывает уже поставленные в очередь страницы и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingPage> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                PendingPage first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // после close() страницы в очередь не добавляются, поэтому пустая очередь
+                    // при closed означает, что записаны все страницы
+                    if (closed && queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (RuntimeException e) {
+                log.error("Ошибка записи страниц сайта {}: {}", siteEntity.getUrl(), e.getMessage());
+                batch.forEach(page -> page.written().completeExceptionally(e));
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        queue.drainTo(batch);
+        for (PendingPage page : batch) {
+            page.written().completeExceptionally(new IllegalStateException("Запись страниц остановлена"));
+        }
+    }
+
+    /**
+     * Идентификаторы лемм получаются вне транзакции пакета: новые леммы фиксируются сразу,
+     * и откат пакета не оставляет в словаре идентификаторы несуществующих строк.
+     * Частоты лемм увеличиваются только для страниц, транзакция которых зафиксирована.
+     * Если пакет не записался, страницы записываются по одной, чтобы ошибка одной страницы
+     * не отменяла запись остальных.
+     */
+    private void writeBatch(List<PendingPage> batch) {
+        List<Map<String, Long>> lemmaIds = new ArrayList<>(batch.size());
+        for (PendingPage page : batch) {
+            lemmaIds.add(lemmaDictionary.getLemmaIds(page.lemmas().keySet()));
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertPages(batch, lemmaIds));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).written().completeExceptionally(e);
+                return;
+            }
+            log.warn("Не удалось записать пакет из {} страниц сайта {}, страницы будут записаны по одной: {}",
+                    batch.size(), siteEntity.getUrl(), e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                writeSingle(batch.get(i), lemmaIds.get(i));
+            }
+            return;
+        }
+
+        for (PendingPage page : batch) {
+            onWritten(page);
+        }
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteRepository.save(siteEntity);
+    }
+
+    private void writeSingle(PendingPage page, Map<String, Long> lemmaIds) {
+        // идентификатор, выданный в откатившейся транзакции, недействителен
+        page.pageEntity().setId(null);
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertPages(List.of(page), List.of(lemmaIds)));
+            onWritten(page);
+        } catch (RuntimeException e) {
+            page.written().completeExceptionally(e);
+        }
+    }
+
+    private void insertPages(List<PendingPage> pages, List<Map<String, Long>> lemmaIds) {
+        Map<Long, Map<Long, int[]>> positionsByPageId = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            PendingPage page = pages.get(i);
+            PageEntity pageEntity = pageRepository.save(page.pageEntity());
+            Map<Long, int[]> positionsByLemmaId = new HashMap<>();
+            for (Map.Entry<String, int[]> entry : page.lemmas().entrySet()) {
+                positionsByLemmaId.put(lemmaIds.get(i).get(entry.getKey()), entry.getValue());
+            }
+            positionsByPageId.put(pageEntity.getId(), positionsByLemmaId);
+        }
+        indexRepository.insertIndexes(positionsByPageId);
+    }
+
+    private void onWritten(PendingPage page) {
+        lemmaDictionary.addPage(page.lemmas().keySet());
+        invertedIndex.addPage(siteEntity.getId(), page.pageEntity().getId(), page.lemmas());
+        page.written().complete(null);
+    }
+}
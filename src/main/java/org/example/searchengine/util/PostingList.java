@@ -0,0 +1,225 @@
+package org.example.searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений леммы: отсортированные идентификаторы страниц и ранги.
+ * Идентификаторы хранятся разностями в формате varint, ранги - массивом float.
+ * Для каждого SKIP_INTERVAL-го вхождения запоминаются идентификатор и смещение в encodedIds,
+ * чтобы при пересечении списков переходить к нужному месту, не раскодируя список с начала.
+ */
+public class PostingList {
+    private static final int SKIP_INTERVAL = 64;
+
+    private byte[] encodedIds = new byte[16];
+    private float[] ranks = new float[4];
+    private int byteLength;
+    private int size;
+    private long lastPageId;
+    /**
+     * Идентификатор вхождения с номером i * SKIP_INTERVAL.
+     */
+    private long[] skipIds = new long[1];
+    /**
+     * Смещение в encodedIds вхождения, следующего за вхождением с номером i * SKIP_INTERVAL.
+     */
+    private int[] skipOffsets = new int[1];
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void add(long pageId, float rank) {
+        if (size == 0 || pageId > lastPageId) {
+            append(pageId, rank);
+            return;
+        }
+
+        Postings postings = decode();
+        int position = Arrays.binarySearch(postings.pageIds(), 0, size, pageId);
+        if (position >= 0) {
+            ranks[position] = rank;
+            return;
+        }
+
+        int insertAt = -position - 1;
+        long[] pageIds = new long[size + 1];
+        float[] newRanks = new float[size + 1];
+        System.arraycopy(postings.pageIds(), 0, pageIds, 0, insertAt);
+        System.arraycopy(postings.ranks(), 0, newRanks, 0, insertAt);
+        pageIds[insertAt] = pageId;
+        newRanks[insertAt] = rank;
+        System.arraycopy(postings.pageIds(), insertAt, pageIds, insertAt + 1, size - insertAt);
+        System.arraycopy(postings.ranks(), insertAt, newRanks, insertAt + 1, size - insertAt);
+        rebuild(pageIds, newRanks, size + 1);
+    }
+
+    public synchronized boolean remove(long pageId) {
+        Postings postings = decode();
+        int position = Arrays.binarySearch(postings.pageIds(), 0, size, pageId);
+        if (position < 0) {
+            return false;
+        }
+
+        long[] pageIds = postings.pageIds();
+        float[] oldRanks = postings.ranks();
+        System.arraycopy(pageIds, position + 1, pageIds, position, size - position - 1);
+        System.arraycopy(oldRanks, position + 1, oldRanks, position, size - position - 1);
+        rebuild(pageIds, oldRanks, size - 1);
+        return true;
+    }
+
+    /**
+     * @return копия списка в раскодированном виде, безопасная для чтения без блокировок
+     */
+    public synchronized Postings decode() {
+        long[] pageIds = new long[size];
+        long pageId = 0;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encodedIds[offset++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            pageId += delta;
+            pageIds[i] = pageId;
+        }
+        return new Postings(pageIds, Arrays.copyOf(ranks, size));
+    }
+
+    /**
+     * Оставляет из кандидатов только страницы, на которых встречается лемма, и прибавляет
+     * к их оценке вклад леммы по BM25. Каждый кандидат ищется галопом по точкам перехода и затем
+     * перебором внутри блока, поэтому стоимость зависит от числа кандидатов, а не от длины списка.
+     *
+     * @param pageIds     идентификаторы кандидатов по возрастанию, сжимаются на месте
+     * @param scores      оценки кандидатов, сжимаются вместе с идентификаторами
+     * @param lengthNorms поправки на длину страниц кандидатов ({@link Bm25#lengthNorm}), сжимаются так же
+     * @param count       число кандидатов
+     * @param idf         обратная частота леммы ({@link Bm25#idf})
+     * @return число оставшихся кандидатов
+     */
+    public synchronized int intersect(long[] pageIds, float[] scores, float[] lengthNorms, int count, float idf) {
+        int kept = 0;
+        int index = -1;
+        int offset = 0;
+        long pageId = 0;
+        int block = 0;
+        int blockCount = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+
+        for (int c = 0; c < count; c++) {
+            long target = pageIds[c];
+            if (size == 0 || target > lastPageId) {
+                break;
+            }
+            if (pageId >= target && index >= 0) {
+                if (pageId == target) {
+                    keep(pageIds, scores, lengthNorms, kept++, c, Bm25.score(ranks[index], idf, lengthNorms[c]));
+                }
+                continue;
+            }
+
+            block = gallop(block, blockCount, target);
+            if (block * SKIP_INTERVAL > index && skipIds[block] <= target) {
+                index = block * SKIP_INTERVAL;
+                pageId = skipIds[block];
+                offset = skipOffsets[block];
+            }
+            while (pageId < target && index + 1 < size) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = encodedIds[offset++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                pageId += delta;
+                index++;
+            }
+            if (pageId == target) {
+                keep(pageIds, scores, lengthNorms, kept++, c, Bm25.score(ranks[index], idf, lengthNorms[c]));
+            }
+        }
+        return kept;
+    }
+
+    private static void keep(long[] pageIds, float[] scores, float[] lengthNorms, int to, int from, float score) {
+        pageIds[to] = pageIds[from];
+        scores[to] = scores[from] + score;
+        lengthNorms[to] = lengthNorms[from];
+    }
+
+    /**
+     * @return последний блок, начиная с from, первое вхождение которого не больше target
+     */
+    private int gallop(int from, int blockCount, long target) {
+        int low = from;
+        int step = 1;
+        while (low + step < blockCount && skipIds[low + step] <= target) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, blockCount);
+        // skipIds[low] <= target или low == from, skipIds[high] > target или high == blockCount
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (skipIds[middle] <= target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void rebuild(long[] pageIds, float[] newRanks, int newSize) {
+        encodedIds = new byte[Math.max(16, newSize * 2)];
+        ranks = new float[Math.max(4, newSize)];
+        skipIds = new long[newSize / SKIP_INTERVAL + 1];
+        skipOffsets = new int[newSize / SKIP_INTERVAL + 1];
+        byteLength = 0;
+        size = 0;
+        lastPageId = 0;
+        for (int i = 0; i < newSize; i++) {
+            append(pageIds[i], newRanks[i]);
+        }
+    }
+
+    private void append(long pageId, float rank) {
+        long delta = pageId - lastPageId;
+        if (byteLength + 10 > encodedIds.length) {
+            encodedIds = Arrays.copyOf(encodedIds, encodedIds.length * 2);
+        }
+        while ((delta & ~0x7FL) != 0) {
+            encodedIds[byteLength++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        encodedIds[byteLength++] = (byte) delta;
+
+        if (size % SKIP_INTERVAL == 0) {
+            int block = size / SKIP_INTERVAL;
+            if (block == skipIds.length) {
+                skipIds = Arrays.copyOf(skipIds, block * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+            }
+            skipIds[block] = pageId;
+            skipOffsets[block] = byteLength;
+        }
+        if (size == ranks.length) {
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+        ranks[size++] = rank;
+        lastPageId = pageId;
+    }
+
+    public record Postings(long[] pageIds, float[] ranks) {
+        public int size() {
+            return pageIds.length;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.searchengine.util;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt, относящиеся к нашему обходчику.
+ */
+@Getter
+public class RobotsRules {
+    private Duration crawlDelay;
+    private final List<String> sitemaps = new ArrayList<>();
+    private final List<PathRule> pathRules = new ArrayList<>();
+
+    public static RobotsRules empty() {
+        return new RobotsRules();
+    }
+
+    /**
+     * Разбирает robots.txt. Применяется группа с User-agent: *,
+     * так как агент обходчика имитирует обычный браузер.
+     * Директивы Sitemap не относятся к группам и учитываются все.
+     */
+    public static RobotsRules parse(String robotsTxt) {
+        RobotsRules rules = new RobotsRules();
+        boolean inGroup = false;
+        boolean groupHasRules = false;
+
+        for (String rawLine : robotsTxt.split("\\r?\\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("sitemap")) {
+                if (!value.isEmpty()) {
+                    rules.sitemaps.add(value);
+                }
+                continue;
+            }
+            if (field.equals("user-agent")) {
+                if (groupHasRules) {
+                    inGroup = false;
+                    groupHasRules = false;
+                }
+                inGroup |= value.equals("*");
+                continue;
+            }
+            groupHasRules = true;
+            if (!inGroup) {
+                continue;
+            }
+            switch (field) {
+                case "crawl-delay" -> rules.crawlDelay = parseDelay(value);
+                case "allow" -> rules.addPathRule(value, true);
+                case "disallow" -> rules.addPathRule(value, false);
+                default -> {
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Разрешён ли обход пути. Применяется правило с самым длинным шаблоном,
+     * при равной длине Allow имеет приоритет.
+     *
+     * @param path путь страницы относительно корня сайта, начинается с "/"
+     */
+    public boolean isAllowed(String path) {
+        PathRule matched = null;
+        for (PathRule rule : pathRules) {
+            if (!rule.matches(path)) {
+                continue;
+            }
+            if (matched == null || rule.length() > matched.length()
+                    || (rule.length() == matched.length() && rule.allow())) {
+                matched = rule;
+            }
+        }
+        return matched == null || matched.allow();
+    }
+
+    private void addPathRule(String value, boolean allow) {
+        // пустой Disallow разрешает всё
+        if (!value.isEmpty()) {
+            pathRules.add(PathRule.of(value, allow));
+        }
+    }
+
+    private static Duration parseDelay(String value) {
+        try {
+            return Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Шаблон пути из Allow/Disallow: "*" - любая последовательность символов,
+     * "$" в конце - конец пути.
+     */
+    public record PathRule(Pattern pattern, int length, boolean allow) {
+
+        static PathRule of(String value, boolean allow) {
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            String[] parts = body.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                if (!parts[i].isEmpty()) {
+                    regex.append(Pattern.quote(parts[i]));
+                }
+            }
+            if (anchored) {
+                regex.append('$');
+            }
+            return new PathRule(Pattern.compile(regex.toString()), value.length(), allow);
+        }
+
+        boolean matches(String path) {
+            return pattern.matcher(path).lookingAt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.searchengine.util;
+
+import java.util.Arrays;
+
+/**
+ * Однопроходный разбор текста на русские слова.
+ * Словом считается непрерывная последовательность букв а-я и ё в любом регистре,
+ * все остальные символы являются разделителями.
+ */
+public final class RussianTokenizer {
+
+    private RussianTokenizer() {
+    }
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        /**
+         * @param buffer   буфер со словом в нижнем регистре, переиспользуется между вызовами
+         * @param length   длина слова в буфере
+         * @param position порядковый номер слова в тексте
+         * @param offset   смещение начала слова в исходном тексте
+         */
+        void accept(char[] buffer, int length, int position, int offset);
+    }
+
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        char[] buffer = new char[32];
+        int length = 0;
+        int position = 0;
+        int start = 0;
+        int textLength = text.length();
+
+        for (int i = 0; i < textLength; i++) {
+            char lower = toLowerRussian(text.charAt(i));
+            if (lower != 0) {
+                if (length == 0) {
+                    start = i;
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                buffer[length++] = lower;
+            } else if (length > 0) {
+                consumer.accept(buffer, length, position++, start);
+                length = 0;
+            }
+        }
+
+        if (length > 0) {
+            consumer.accept(buffer, length, position, start);
+        }
+    }
+
+    public static boolean isRussianLetter(char c) {
+        return toLowerRussian(c) != 0;
+    }
+
+    /**
+     * @return буква в нижнем регистре или 0, если символ не является русской буквой
+     */
+    private static char toLowerRussian(char c) {
+        if (c >= 'а' && c <= 'я' || c == 'ё') {
+            return c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c == 'Ё') {
+            return 'ё';
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.config.SearchSettings;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Кэш ранжированных результатов поиска по набору лемм запроса и сайту.
+ * Вместе с результатом запоминаются счётчики изменений индексов сайтов ({@link InvertedIndex#getGeneration}),
+ * по которым он вычислен: запись или удаление страницы сайта делает результаты по нему устаревшими,
+ * и они вычисляются заново при следующем запросе.
+ */
+@Component
+public class SearchResultCache {
+    private final LruCache<Key, RankedPages> cache;
+
+    public SearchResultCache(SearchSettings searchSettings) {
+        this.cache = new LruCache<>(searchSettings.getCacheSize());
+    }
+
+    /**
+     * @param lemmas отсортированные леммы запроса
+     * @param site   адрес сайта, пустая строка - поиск по всем сайтам
+     */
+    public record Key(List<String> lemmas, String site) {
+
+        public static Key of(Set<String> lemmas, String site) {
+            return new Key(lemmas.stream().sorted().toList(), site);
+        }
+    }
+
+    /**
+     * Начало списка найденных страниц по убыванию релевантности.
+     *
+     * @param siteIds     сайты, по которым выполнялся поиск
+     * @param generations счётчики изменений индексов этих сайтов на момент поиска
+     * @param pageIds     первые страницы результата, не больше глубины кэширования
+     * @param relevances  относительная релевантность страниц
+     * @param count       общее число найденных страниц
+     */
+    public record RankedPages(long[] siteIds, long[] generations, long[] pageIds, float[] relevances, int count) {
+
+        /**
+         * Содержит ли результат все страницы до позиции end.
+         */
+        public boolean covers(long end) {
+            return pageIds.length == count || end <= pageIds.length;
+        }
+    }
+
+    /**
+     * Устаревший результат удаляется из кэша и учитывается как промах.
+     *
+     * @return результат, вычисленный по тем же сайтам при тех же счётчиках изменений, или null
+     */
+    public RankedPages get(Key key, long[] siteIds, long[] generations) {
+        return cache.getIfPresent(key, rankedPages -> Arrays.equals(rankedPages.siteIds(), siteIds)
+                && Arrays.equals(rankedPages.generations(), generations));
+    }
+
+    public void put(Key key, RankedPages rankedPages) {
+        cache.put(key, rankedPages);
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.searchengine.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инвертированный индекс одного сайта: лемма - список страниц, на которых она встречается.
+ */
+public class SiteIndex {
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+    private final PageLengths pageLengths = new PageLengths();
+
+    public PostingList getPostings(String lemma) {
+        return postings.get(lemma);
+    }
+
+    public int getPageCount() {
+        return pageLengths.size();
+    }
+
+    /**
+     * @return средняя длина страницы сайта в вхождениях лемм
+     */
+    public float getAverageLength() {
+        int pageCount = pageLengths.size();
+        return pageCount == 0 ? 0 : (float) pageLengths.getTotalLength() / pageCount;
+    }
+
+    public void getPageLengths(long[] pageIds, int count, float[] lengths) {
+        pageLengths.getLengths(pageIds, count, lengths);
+    }
+
+    public int getLemmaCount() {
+        return postings.size();
+    }
+
+    /**
+     * @param length длина страницы, добавляется к уже учтённой
+     */
+    public void addPage(long pageId, int length) {
+        pageLengths.add(pageId, length);
+    }
+
+    public void addPosting(String lemma, long pageId, float rank) {
+        postings.computeIfAbsent(lemma, key -> new PostingList()).add(pageId, rank);
+    }
+
+    public void removePosting(String lemma, long pageId) {
+        postings.computeIfPresent(lemma, (key, postingList) -> {
+            postingList.remove(pageId);
+            return postingList.size() == 0 ? null : postingList;
+        });
+    }
+
+    public void removePage(long pageId) {
+        pageLengths.remove(pageId);
+    }
+}
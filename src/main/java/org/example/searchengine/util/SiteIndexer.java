@@ -4,87 +4,543 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.example.searchengine.config.RequestSettings;
+import org.example.searchengine.dto.indexing.PageValidators;
 import org.example.searchengine.model.Status;
 import org.example.searchengine.services.impl.IndexingServiceImpl;
 import org.springframework.stereotype.Component;
 import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.repositories.BulkLoadRepository;
 import org.example.searchengine.repositories.IndexRepository;
 import org.example.searchengine.repositories.LemmaRepository;
 import org.example.searchengine.repositories.PageRepository;
 import org.example.searchengine.repositories.SiteRepository;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Обход одного сайта. Адреса ожидают обхода в очереди, каждая загружаемая страница
+ * обрабатывается в собственном виртуальном потоке, число одновременно обрабатываемых
+ * страниц ограничено как для сайта, так и для всех сайтов вместе ({@link CrawlBudget}).
+ */
 @Getter
 @Setter
 @Component
 @Slf4j
 public class SiteIndexer {
+    private static final long FRONTIER_POLL_MILLIS = 100;
+
     private IndexingServiceImpl indexingService;
-    private ForkJoinPool pool;
     private SiteEntity siteEntity;
     private SiteRepository siteRepository;
     private PageRepository pageRepository;
     private LemmaRepository lemmaRepository;
     private IndexRepository indexRepository;
     private RequestSettings jsoupRequestSettings;
+    private InvertedIndex invertedIndex;
+    private LemmaFinder lemmaFinder;
+    private BulkLoadRepository bulkLoadRepository;
+    private boolean bulkLoad;
+    private String stagingDir;
+    private BulkLoader bulkLoader;
+    private int lemmaFlushInterval;
+    private LemmaDictionary lemmaDictionary;
+    private HostRateLimiter hostRateLimiter;
+    private PageFetcher pageFetcher;
+    private TransactionTemplate transactionTemplate;
+    private int writeQueueCapacity;
+    private int writeBatchSize;
+    private PageWriter pageWriter;
+    private ExecutorService lemmatizationPool;
+    private int maxInFlightPages;
+    private int frontierMemoryCapacity;
+    private boolean incremental;
+    private Map<String, PageValidators> knownPages;
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private volatile boolean cancelled;
+    private ExecutorService fetchExecutor;
+    private CrawlBudget crawlBudget;
+    private final LongAdder crawledPages = new LongAdder();
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+    private volatile Thread crawlThread;
+    private String checkpointDir;
+    private int checkpointIntervalSeconds;
+    private CrawlCheckpoint checkpoint;
+    private boolean resume;
+    private boolean useSitemaps;
+    private int maxSitemapUrls;
+    private RobotsRules robotsRules = RobotsRules.empty();
+    private Map<String, Instant> sitemapLastmod = new ConcurrentHashMap<>();
+    private Instant previousCrawlTime;
+
     public void startIndexing() {
         log.info("Старт индексации сайта: {}. С адресом: {}", siteEntity.getName(), siteEntity.getUrl());
-        indexingService.deleteAllBySiteEntity(siteEntity);
+        if (siteEntity.getStatus() == Status.INDEXED && siteEntity.getStatusTime() != null) {
+            previousCrawlTime = siteEntity.getStatusTime().atZone(ZoneId.systemDefault()).toInstant();
+        }
+        if (incremental && siteEntity.getId() != null) {
+            knownPages = new ConcurrentHashMap<>();
+            for (PageValidators page : pageRepository.findValidatorsBySiteId(siteEntity.getId())) {
+                knownPages.put(page.getPath(), page);
+            }
+        } else {
+            indexingService.deleteAllBySiteEntity(siteEntity);
+        }
         siteEntity.setStatus(Status.INDEXING);
         siteRepository.save(siteEntity);
-        IndexerExecutor executor = createExecutor();
-        pool.submit(executor);
+        checkpoint = new CrawlCheckpoint(Path.of(checkpointDir), siteEntity.getId());
+        checkpoint.delete();
+        startCrawlThread();
+    }
+
+    /**
+     * Продолжает обход, прерванный перезапуском приложения, с последней контрольной точки.
+     * Страницы, записанные до перезапуска, считаются известными: если обход дойдёт до них
+     * снова, они будут проверены условным запросом, а не загружены повторно.
+     */
+    public void resumeIndexing() {
+        log.info("Возобновление индексации сайта: {}. С адресом: {}", siteEntity.getName(), siteEntity.getUrl());
+        checkpoint = new CrawlCheckpoint(Path.of(checkpointDir), siteEntity.getId());
+        knownPages = new ConcurrentHashMap<>();
+        for (PageValidators page : pageRepository.findValidatorsBySiteId(siteEntity.getId())) {
+            knownPages.put(page.getPath(), page);
+        }
+        resume = true;
+        startCrawlThread();
+    }
+
+    public boolean hasCheckpoint() {
+        return new CrawlCheckpoint(Path.of(checkpointDir), siteEntity.getId()).exists();
+    }
+
+    private void startCrawlThread() {
+        running = true;
+        startedNanos = System.nanoTime();
+        crawlThread = Thread.ofVirtual().name("crawl-" + siteEntity.getId()).start(this::crawl);
+    }
+
+    /**
+     * Итоговый статус сайта записывает только поток обхода: остановка лишь сообщает о себе
+     * и дожидается его завершения, поэтому не может перезаписать статус завершившегося обхода.
+     */
+    private void crawl() {
+        boolean finished = false;
+        try {
+            applyRobotsRules();
+            IndexerExecutor executor = createExecutor();
+            if (bulkLoad && (knownPages == null || knownPages.isEmpty())) {
+                bulkLoader = createBulkLoader();
+                executor.setBulkLoader(bulkLoader);
+            }
+            boolean completed = crawlFrontier(executor);
+            if (completed && !stopped) {
+                finishIndexing(executor);
+                finished = true;
+            }
+        } catch (Exception e) {
+            if (!stopped) {
+                log.error("Ошибка индексации сайта {}: {}", siteEntity.getUrl(), e.getMessage());
+                checkpoint.delete();
+                siteEntity.setStatus(Status.FAILED);
+                siteEntity.setLastError(e.getMessage());
+                siteRepository.save(siteEntity);
+            }
+        } finally {
+            // прерывание от halt() уже прервало обход; без сброса close() не дождался бы записи страниц
+            Thread.interrupted();
+            if (pageWriter != null) {
+                pageWriter.close();
+            }
+            if (stopped && !finished) {
+                onStopped();
+            }
+            finishedNanos = System.nanoTime();
+            running = false;
+        }
+    }
+
+    /**
+     * Средняя скорость обхода сайта за время последнего запуска.
+     */
+    public double getPagesPerSecond() {
+        if (startedNanos == 0) {
+            return 0;
+        }
+        long elapsedNanos = (running ? System.nanoTime() : finishedNanos) - startedNanos;
+        return elapsedNanos <= 0 ? 0 : crawledPages.sum() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Раздаёт адреса из очереди виртуальным потокам, пока очередь не опустеет
+     * и не завершится обработка всех загружаемых страниц.
+     * Найденные ссылки сразу попадают в очередь, поэтому в памяти находятся
+     * только документы страниц, обрабатываемых в данный момент.
+     *
+     * @return false, если обход был прерван
+     */
+    private boolean crawlFrontier(IndexerExecutor executor) throws InterruptedException, IOException {
+        Path spillDir = Files.createDirectories(Path.of(stagingDir));
+        try (CrawlFrontier frontier = new CrawlFrontier(frontierMemoryCapacity, spillDir,
+                "site-" + siteEntity.getId() + "-frontier")) {
+            return crawlFrontier(executor, frontier);
+        }
+    }
+
+    private boolean crawlFrontier(IndexerExecutor executor, CrawlFrontier frontier)
+            throws InterruptedException, IOException {
+        VisitedUrlSet uniqueUrls = new VisitedUrlSet();
+        Semaphore inFlight = new Semaphore(Math.max(1, maxInFlightPages));
+        AtomicInteger activePages = new AtomicInteger();
+        Set<FrontierEntry> inFlightEntries = ConcurrentHashMap.newKeySet();
+
+        if (resume) {
+            restoreCheckpoint(uniqueUrls, frontier);
+        } else {
+            uniqueUrls.add("/");
+            frontier.add(new FrontierEntry(siteEntity.getUrl(), "/", 0));
+            if (useSitemaps) {
+                seedFromSitemaps(uniqueUrls, frontier);
+            }
+        }
+        long checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(checkpointIntervalSeconds);
+        long nextCheckpointNanos = System.nanoTime() + checkpointIntervalNanos;
+        fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            while (!stopped) {
+                if (checkpointIntervalNanos > 0 && bulkLoader == null && System.nanoTime() >= nextCheckpointNanos) {
+                    saveCheckpoint(uniqueUrls, frontier, inFlightEntries);
+                    nextCheckpointNanos = System.nanoTime() + checkpointIntervalNanos;
+                }
+                FrontierEntry entry = frontier.poll(FRONTIER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    if (activePages.get() == 0 && frontier.isEmpty()) {
+                        return true;
+                    }
+                    continue;
+                }
+
+                inFlight.acquire();
+                try {
+                    crawlBudget.acquire();
+                } catch (InterruptedException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                activePages.incrementAndGet();
+                inFlightEntries.add(entry);
+                try {
+                    fetchExecutor.execute(() -> {
+                        try {
+                            Map<String, String> links = executor.indexPage(entry.absUrl(), entry.relUrl(), false);
+                            crawledPages.increment();
+                            // адрес отмечается встреченным и ставится в очередь до или после записи
+                            // контрольной точки, но не во время неё
+                            checkpointLock.readLock().lock();
+                            try {
+                                for (Map.Entry<String, String> link : links.entrySet()) {
+                                    if (robotsRules.isAllowed(link.getValue()) && uniqueUrls.add(link.getValue())) {
+                                        frontier.add(new FrontierEntry(link.getKey(), link.getValue(), entry.depth() + 1));
+                                    }
+                                }
+                            } finally {
+                                checkpointLock.readLock().unlock();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Exception e) {
+                            log.error("Ошибка индексации страницы {}: {}", entry.absUrl(), e.getMessage());
+                        } finally {
+                            inFlightEntries.remove(entry);
+                            activePages.decrementAndGet();
+                            crawlBudget.release();
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // обход остановлен, пока страница ждала разрешения
+                    inFlightEntries.remove(entry);
+                    activePages.decrementAndGet();
+                    crawlBudget.release();
+                    inFlight.release();
+                }
+            }
+            return false;
+        } finally {
+            // close() ждёт завершения потоков загрузки, даже если поток обхода прерван:
+            // после выхода из обхода ни одна страница уже не записывается
+            fetchExecutor.shutdownNow();
+            fetchExecutor.close();
+        }
+    }
+
+    /**
+     * Добавляет в очередь страницы из sitemap.xml, в том числе те, на которые нет ссылок.
+     * Недавно изменённые страницы ставятся в очередь первыми.
+     */
+    private void seedFromSitemaps(VisitedUrlSet uniqueUrls, CrawlFrontier frontier)
+            throws IOException {
+        List<String> sitemapUrls = robotsRules.getSitemaps().isEmpty()
+                ? List.of(siteEntity.getUrl() + "sitemap.xml")
+                : robotsRules.getSitemaps();
+        List<SitemapReader.SitemapEntry> entries =
+                new SitemapReader(jsoupRequestSettings, hostRateLimiter, maxSitemapUrls, siteEntity.getUrl())
+                        .read(sitemapUrls);
+        entries.sort(Comparator.comparing(SitemapReader.SitemapEntry::lastmod,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+
+        int seeded = 0;
+        for (SitemapReader.SitemapEntry entry : entries) {
+            String absUrl = UrlNormalizer.normalize(entry.url());
+            if (!UrlNormalizer.isPageLink(siteEntity.getUrl(), absUrl)) {
+                continue;
+            }
+            String relUrl = UrlNormalizer.getRelUrl(absUrl);
+            if (!robotsRules.isAllowed(relUrl)) {
+                continue;
+            }
+            if (entry.lastmod() != null) {
+                sitemapLastmod.put(relUrl, entry.lastmod());
+            }
+            if (uniqueUrls.add(relUrl)) {
+                frontier.add(new FrontierEntry(absUrl, relUrl, 1));
+                seeded++;
+            }
+        }
+        log.info("Из карты сайта {} в очередь добавлено страниц: {}", siteEntity.getUrl(), seeded);
+    }
+
+    /**
+     * Контрольная точка записывается из потока, раздающего адреса, поэтому во время записи
+     * адреса не переходят из очереди в обработку, а потоки обхода не добавляют новые адреса,
+     * иначе адрес мог бы попасть во встреченные, но не в очередь. Перед записью сбрасываются накопленные
+     * частоты лемм, чтобы после перезапуска они не потерялись.
+     */
+    private void saveCheckpoint(VisitedUrlSet uniqueUrls, CrawlFrontier frontier,
+                                Set<FrontierEntry> inFlightEntries) {
+        lemmaDictionary.flush();
+        checkpointLock.writeLock().lock();
+        try {
+            checkpoint.save(uniqueUrls, frontier, inFlightEntries);
+        } catch (IOException e) {
+            log.warn("Не удалось записать контрольную точку обхода сайта {}: {}", siteEntity.getUrl(), e.getMessage());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private void restoreCheckpoint(VisitedUrlSet uniqueUrls, CrawlFrontier frontier) throws IOException {
+        Set<String> pendingPaths = checkpoint.restore(uniqueUrls, frontier);
+        // страницы, обработанные до перезапуска, не удаляются как непосещённые
+        knownPages.keySet().removeIf(path -> uniqueUrls.contains(path) && !pendingPaths.contains(path));
+        log.info("Обход сайта {} продолжен с контрольной точки: в очереди {}, встречено адресов {}",
+                siteEntity.getUrl(), frontier.size(), uniqueUrls.size());
+    }
+
+    void finishIndexing(IndexerExecutor executor) throws IOException, SQLException {
+        lemmaDictionary.flush();
+        if (bulkLoader != null) {
+            bulkLoader.finish();
+            invertedIndex.loadSite(siteEntity.getId());
+        }
+        if (knownPages != null) {
+            deleteUnvisitedPages(executor);
+        }
+        checkpoint.delete();
+        siteEntity.setLastError("");
+        siteEntity.setStatus(Status.INDEXED);
+        // время статуса INDEXED - окончание обхода, с ним сравниваются даты из sitemap.xml при следующем обходе
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteRepository.save(siteEntity);
+        log.info("Индексация сайта завершена: {}", siteEntity.getUrl());
+    }
+
+    /**
+     * После инкрементального обхода в {@link #knownPages} остаются страницы,
+     * на которые больше нет ссылок или которые стали недоступны.
+     */
+    private void deleteUnvisitedPages(IndexerExecutor executor) {
+        for (PageValidators page : knownPages.values()) {
+            executor.deletePage(page.getId());
+            log.info("Страница удалена из индекса: {}{}", siteEntity.getUrl(), page.getPath().substring(1));
+        }
+        lemmaRepository.deleteEmptyLemmas(siteEntity.getId());
+    }
+
+    private void applyRobotsRules() {
+        robotsRules = fetchRobotsRules();
+        hostRateLimiter.setCrawlDelay(URI.create(siteEntity.getUrl()).getHost(), robotsRules.getCrawlDelay());
+    }
+
+    private RobotsRules fetchRobotsRules() {
+        try {
+            Connection.Response response = Jsoup.connect(siteEntity.getUrl() + "robots.txt")
+                    .userAgent(jsoupRequestSettings.getAgent())
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .execute();
+            if (response.statusCode() != 200) {
+                return RobotsRules.empty();
+            }
+            return RobotsRules.parse(response.body());
+        } catch (IOException e) {
+            log.warn("Не удалось получить robots.txt сайта {}: {}", siteEntity.getUrl(), e.getMessage());
+            return RobotsRules.empty();
+        }
+    }
+
+    private BulkLoader createBulkLoader() {
+        indexingService.startBulkLoad();
+        try {
+            return new BulkLoader(bulkLoadRepository, siteEntity.getId(), Path.of(stagingDir),
+                    indexingService::finishBulkLoad);
+        } catch (IOException e) {
+            log.error("Не удалось создать временные файлы массовой загрузки, " +
+                    "сайт {} будет записан постранично: {}", siteEntity.getUrl(), e.getMessage());
+            indexingService.finishBulkLoad();
+            return null;
+        }
     }
 
     public void stopIndexing() {
         log.info("Начало остановки индексации сайта: {}. С адресом: {}", siteEntity.getName(), siteEntity.getUrl());
-        if (siteEntity.getStatus() == Status.INDEXED) {
+        if (!running) {
+            return;
+        }
+        cancelled = true;
+        halt();
+        if (crawlThread == null) {
+            // переиндексация отдельной страницы идёт без потока обхода
+            markCancelled();
+        }
+    }
+
+    /**
+     * Прерывает обход при остановке приложения. Статус сайта и контрольная точка сохраняются,
+     * чтобы после запуска обход продолжился с {@link #resumeIndexing()}.
+     */
+    public void suspendIndexing() {
+        if (!running) {
+            return;
+        }
+        log.info("Обход сайта {} приостановлен до следующего запуска приложения", siteEntity.getUrl());
+        halt();
+    }
+
+    /**
+     * Прерывает ожидания потока обхода и дожидается его завершения.
+     */
+    private void halt() {
+        stopped = true;
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
+        }
+        Thread thread = crawlThread;
+        if (thread == null) {
             return;
         }
-        pool.shutdownNow();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Выполняется потоком обхода после остановки, когда потоки загрузки уже завершились
+     * и временные файлы массовой загрузки никто не дописывает.
+     */
+    private void onStopped() {
+        if (bulkLoader != null) {
+            bulkLoader.discard();
+        }
+        if (lemmaDictionary != null) {
+            lemmaDictionary.flush();
+        }
+        if (cancelled) {
+            markCancelled();
+        }
+    }
+
+    private void markCancelled() {
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
         siteEntity.setStatus(Status.FAILED);
         siteEntity.setLastError("Индексация остановлена пользователем");
         siteRepository.save(siteEntity);
     }
 
     public void indexPath(String absUrl) {
-        IndexerExecutor executor = createExecutor();
-        executor.setRelUrl(getRelUrl(absUrl));
-        executor.setIndexPath(true);
-        executor.setAbsUrl(absUrl);
-        pool.submit(executor);
-        pool.shutdown();
+        running = true;
+        Thread.ofVirtual().name("index-page-" + siteEntity.getId()).start(() -> {
+            try {
+                IndexerExecutor executor = createExecutor();
+                executor.indexPage(absUrl, UrlNormalizer.getRelUrl(absUrl), true);
+                lemmaDictionary.flush();
+            } catch (Exception e) {
+                log.error("Ошибка индексации страницы {}: {}", absUrl, e.getMessage());
+            } finally {
+                if (pageWriter != null) {
+                    pageWriter.close();
+                }
+                running = false;
+                indexingService.finishPageIndexing(siteEntity.getUrl());
+            }
+        });
+    }
+
+    /**
+     * Каждый поток обхода ждёт записи своей страницы, поэтому страниц в очереди и в записываемом
+     * пакете не больше, чем обрабатывается одновременно. Если очередь вмещает их все, она никогда
+     * не заполнится и не приостановит загрузку при медленной базе.
+     */
+    private int getWriteQueueLimit() {
+        int limit = Math.max(1, maxInFlightPages - writeBatchSize);
+        if (writeQueueCapacity > limit) {
+            log.warn("write-queue-capacity {} уменьшена до {}: очередь записи вместе с пакетом " +
+                    "не должна превышать max-in-flight-pages", writeQueueCapacity, limit);
+            return limit;
+        }
+        return writeQueueCapacity;
     }
 
     public IndexerExecutor createExecutor() {
         IndexerExecutor executor = new IndexerExecutor();
-        Set<String> uniqueUrls = Collections.synchronizedSet(new HashSet<>());
         executor.setSiteRepository(siteRepository);
         executor.setPageRepository(pageRepository);
-        executor.setJsoupRequestSettings(jsoupRequestSettings);
         executor.setSiteEntity(siteEntity);
-        executor.setAbsUrl(siteEntity.getUrl());
-        executor.setRelUrl("/");
-        executor.setUniqueUrls(uniqueUrls);
-        executor.setIndexPath(false);
         executor.setLemmaRepository(lemmaRepository);
-        executor.setIndexRepository(indexRepository);
-        executor.setLemmaFinder(LemmaFinder.getInstance());
+        executor.setLemmaFinder(lemmaFinder);
+        lemmaDictionary = new LemmaDictionary(lemmaRepository, siteEntity.getId(), lemmaFlushInterval);
+        executor.setLemmaDictionary(lemmaDictionary);
+        pageWriter = new PageWriter(pageRepository, indexRepository, siteRepository, transactionTemplate,
+                lemmaDictionary, invertedIndex, siteEntity, getWriteQueueLimit(), writeBatchSize);
+        executor.setPageWriter(pageWriter);
+        executor.setPageFetcher(pageFetcher);
+        executor.setInvertedIndex(invertedIndex);
+        executor.setLemmatizationPool(lemmatizationPool);
+        executor.setKnownPages(knownPages);
+        executor.setSitemapLastmod(sitemapLastmod);
+        executor.setPreviousCrawlTime(previousCrawlTime);
         return executor;
     }
-
-    public String getRelUrl(String absUrl) {
-        Pattern pattern = java.util.regex.Pattern.compile("https?://[^/]+(/[^?#]*)");
-        Matcher matcher = pattern.matcher(absUrl);
-
-        if (matcher.find()) {
-            String path = matcher.group(1);
-            return path.isEmpty() ? "/" : path;
-        }
-        return "/";
-    }
-}
\ No newline at end of file
+}
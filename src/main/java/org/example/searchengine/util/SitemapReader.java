@@ -0,0 +1,208 @@
+package org.example.searchengine.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.searchengine.config.RequestSettings;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Чтение sitemap.xml. Файлы разбираются потоково через StAX, поэтому даже карты
+ * на десятки мегабайт не загружаются в память целиком. Поддерживаются индексы карт
+ * (sitemapindex) и карты, сжатые gzip.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SitemapReader {
+    private static final int MAX_SITEMAP_BYTES = 50 * 1024 * 1024;
+    private static final int MAX_SITEMAPS = 100;
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final ZoneOffset LATEST_OFFSET = ZoneOffset.ofHours(-12);
+
+    private final RequestSettings jsoupRequestSettings;
+    private final HostRateLimiter hostRateLimiter;
+    private final int maxUrls;
+    /**
+     * Адрес сайта, относительно которого разрешаются адреса карт из robots.txt.
+     */
+    private final String siteUrl;
+
+    /**
+     * @param lastmod дата изменения страницы из карты сайта, null если не указана
+     */
+    public record SitemapEntry(String url, Instant lastmod) {
+    }
+
+    /**
+     * Читает карты сайта и все карты, на которые ссылаются их индексы.
+     * Чтение прекращается, когда собрано maxUrls адресов.
+     */
+    public List<SitemapEntry> read(Collection<String> sitemapUrls) {
+        List<SitemapEntry> entries = new ArrayList<>();
+        Deque<String> pending = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        for (String sitemapUrl : sitemapUrls) {
+            addSitemap(siteUrl, sitemapUrl, pending, seen);
+        }
+        int sitemapCount = 0;
+
+        while (!pending.isEmpty() && sitemapCount < MAX_SITEMAPS && entries.size() < maxUrls) {
+            String sitemapUrl = pending.poll();
+            sitemapCount++;
+            try {
+                readSitemap(sitemapUrl, entries, nested -> addSitemap(sitemapUrl, nested, pending, seen));
+            } catch (IOException | XMLStreamException | IllegalArgumentException e) {
+                // ошибка в одной карте не прерывает чтение остальных
+                log.warn("Не удалось прочитать карту сайта {}: {}", sitemapUrl, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return entries;
+    }
+
+    private static void addSitemap(String baseUrl, String sitemapUrl, Deque<String> pending, Set<String> seen) {
+        String resolved = resolve(baseUrl, sitemapUrl);
+        if (resolved == null) {
+            log.warn("Пропущен некорректный адрес карты сайта: {}", sitemapUrl);
+        } else if (seen.add(resolved)) {
+            pending.add(resolved);
+        }
+    }
+
+    /**
+     * Адрес карты в robots.txt или в индексе карт может быть относительным.
+     *
+     * @return абсолютный http/https адрес с хостом или null, если адрес некорректен
+     */
+    static String resolve(String baseUrl, String url) {
+        try {
+            URI uri = URI.create(baseUrl).resolve(url.trim());
+            String scheme = uri.getScheme();
+            if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+                return null;
+            }
+            return uri.toString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void readSitemap(String sitemapUrl, List<SitemapEntry> entries, Consumer<String> nestedSitemaps)
+            throws IOException, XMLStreamException, InterruptedException {
+        String host = URI.create(sitemapUrl).getHost();
+        hostRateLimiter.acquire(host);
+        try {
+            Connection.Response response = Jsoup.connect(sitemapUrl)
+                    .userAgent(jsoupRequestSettings.getAgent())
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .maxBodySize(MAX_SITEMAP_BYTES)
+                    .execute();
+            if (response.statusCode() != 200) {
+                log.info("Карта сайта {} недоступна, статус код: {}", sitemapUrl, response.statusCode());
+                return;
+            }
+            try (InputStream input = decompress(response.bodyStream())) {
+                parse(input, entries, nestedSitemaps);
+            }
+        } finally {
+            hostRateLimiter.release(host);
+        }
+    }
+
+    private void parse(InputStream input, List<SitemapEntry> entries, Consumer<String> nestedSitemaps)
+            throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+        try {
+            String loc = null;
+            String lastmod = null;
+            while (reader.hasNext() && entries.size() < maxUrls) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url", "sitemap" -> {
+                            loc = null;
+                            lastmod = null;
+                        }
+                        case "loc" -> loc = reader.getElementText().trim();
+                        case "lastmod" -> lastmod = reader.getElementText().trim();
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null) {
+                    switch (reader.getLocalName()) {
+                        case "url" -> entries.add(new SitemapEntry(loc, parseLastmod(lastmod)));
+                        case "sitemap" -> nestedSitemaps.accept(loc);
+                        default -> {
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Сжатые карты (*.xml.gz) обычно отдаются как application/gzip без Content-Encoding,
+     * поэтому сжатие определяется по сигнатуре в начале файла.
+     */
+    private static InputStream decompress(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * Дата в формате W3C Datetime: только дата или дата и время со смещением.
+     * Дата без времени означает, что страница могла измениться в любой момент этого дня
+     * в часовом поясе сайта, поэтому она заменяется концом дня в самом западном поясе:
+     * раньше этого момента изменение произойти не могло.
+     */
+    static Instant parseLastmod(String lastmod) {
+        if (lastmod == null || lastmod.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(lastmod).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(lastmod).plusDays(1).atStartOfDay().toInstant(LATEST_OFFSET);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
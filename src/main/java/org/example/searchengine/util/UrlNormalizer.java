@@ -0,0 +1,147 @@
+package org.example.searchengine.util;
+
+/**
+ * Разбор и нормализация адресов страниц. Разбор выполняется проходом по строке
+ * без регулярных выражений, для уже нормализованного адреса новые строки не создаются.
+ * <p>
+ * Нормализованный адрес: схема и хост в нижнем регистре, без порта по умолчанию,
+ * без параметров запроса и фрагмента. Завершающий "/" в пути сохраняется как есть.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    /**
+     * @return нормализованный адрес или null, если адрес не http/https
+     */
+    public static String normalize(String url) {
+        int hostStart = getHostStart(url);
+        if (hostStart < 0) {
+            return null;
+        }
+        int hostEnd = indexOfAny(url, hostStart, "/?#");
+        if (hostEnd == hostStart) {
+            return null;
+        }
+        int pathEnd = indexOfAny(url, hostEnd, "?#");
+        int authorityEnd = getAuthorityEnd(url, hostStart, hostEnd);
+        boolean canonical = authorityEnd == hostEnd && pathEnd == url.length() && hostEnd < pathEnd
+                && isLowerCase(url, 0, hostEnd);
+        if (canonical) {
+            return url;
+        }
+
+        StringBuilder builder = new StringBuilder(authorityEnd + pathEnd - hostEnd + 1);
+        appendLowerCase(builder, url, authorityEnd);
+        if (hostEnd < pathEnd) {
+            builder.append(url, hostEnd, pathEnd);
+        } else {
+            builder.append('/');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return путь страницы относительно корня сайта без параметров и фрагмента, "/" для корня
+     */
+    public static String getRelUrl(String absUrl) {
+        int hostStart = getHostStart(absUrl);
+        if (hostStart < 0) {
+            return "/";
+        }
+        int pathStart = indexOfAny(absUrl, hostStart, "/?#");
+        int pathEnd = indexOfAny(absUrl, pathStart, "?#");
+        if (pathStart == pathEnd) {
+            return "/";
+        }
+        return absUrl.substring(pathStart, pathEnd);
+    }
+
+    /**
+     * @return корень сайта вида "https://example.com/" или пустая строка, если адрес не http/https
+     */
+    public static String getRootUrl(String url) {
+        int hostStart = getHostStart(url);
+        if (hostStart < 0) {
+            return "";
+        }
+        int hostEnd = indexOfAny(url, hostStart, "/?#");
+        if (hostEnd == hostStart) {
+            return "";
+        }
+        int authorityEnd = getAuthorityEnd(url, hostStart, hostEnd);
+        StringBuilder builder = new StringBuilder(authorityEnd + 1);
+        appendLowerCase(builder, url, authorityEnd);
+        return builder.append('/').toString();
+    }
+
+    /**
+     * Ведёт ли нормализованный адрес на HTML-страницу сайта: адрес начинается с адреса сайта,
+     * а последний сегмент пути либо без расширения, либо с расширением .html.
+     */
+    public static boolean isPageLink(String siteUrl, String absUrl) {
+        if (absUrl == null || !absUrl.regionMatches(true, 0, siteUrl, 0, siteUrl.length())) {
+            return false;
+        }
+        int pathStart = absUrl.indexOf('/', getHostStart(absUrl));
+        int lastSegment = absUrl.lastIndexOf('/');
+        if (pathStart < 0 || lastSegment < pathStart) {
+            return false;
+        }
+        return absUrl.indexOf('.', lastSegment) < 0 || absUrl.endsWith(".html");
+    }
+
+    /**
+     * @return индекс начала хоста или -1, если схема не http/https
+     */
+    private static int getHostStart(String url) {
+        if (url.regionMatches(true, 0, "https://", 0, 8)) {
+            return 8;
+        }
+        if (url.regionMatches(true, 0, "http://", 0, 7)) {
+            return 7;
+        }
+        return -1;
+    }
+
+    /**
+     * @return конец хоста и порта; порт по умолчанию для схемы и пустой порт отбрасываются
+     */
+    private static int getAuthorityEnd(String url, int hostStart, int hostEnd) {
+        int portStart = url.lastIndexOf(':', hostEnd - 1);
+        if (portStart <= hostStart) {
+            return hostEnd;
+        }
+        String defaultPort = hostStart == 8 ? "443" : "80";
+        int portLength = hostEnd - portStart - 1;
+        boolean isDefault = portLength == 0
+                || (portLength == defaultPort.length() && url.startsWith(defaultPort, portStart + 1));
+        return isDefault ? portStart : hostEnd;
+    }
+
+    private static void appendLowerCase(StringBuilder builder, String value, int end) {
+        for (int i = 0; i < end; i++) {
+            builder.append(Character.toLowerCase(value.charAt(i)));
+        }
+    }
+
+    private static int indexOfAny(String value, int from, String chars) {
+        for (int i = from; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return value.length();
+    }
+
+    private static boolean isLowerCase(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.searchengine.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Множество уже встреченных адресов сайта. Хранит не строки, а их 64-битные отпечатки
+ * в таблицах с открытой адресацией, по 8 байт на ячейку. Добавление выполняется без блокировок:
+ * ячейка занимается через compareAndSet, поэтому из нескольких потоков, добавляющих
+ * один и тот же адрес, true получает только один.
+ * <p>
+ * Вероятность совпадения отпечатков двух разных адресов пренебрежимо мала
+ * (порядка 10<sup>-8</sup> на миллион адресов).
+ */
+public class VisitedUrlSet {
+    private static final long EMPTY = 0;
+    private static final long MOVED = 1;
+    private static final int SEGMENT_BITS = 4;
+    private static final int INITIAL_SEGMENT_CAPACITY = 256;
+    private static final int MAX_SPINS = 64;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final LongAdder size = new LongAdder();
+
+    public VisitedUrlSet() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return true, если адрес встретился впервые
+     */
+    public boolean add(String url) {
+        return addFingerprint(fingerprint(url));
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    public boolean addFingerprint(long fingerprint) {
+        if (fingerprint == EMPTY || fingerprint == MOVED) {
+            fingerprint += 2;
+        }
+        boolean added = segmentFor(fingerprint).add(fingerprint);
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * Перебирает отпечатки всех добавленных адресов. Адреса, добавляемые во время перебора,
+     * могут быть пропущены.
+     */
+    public void forEachFingerprint(LongConsumer consumer) {
+        for (Segment segment : segments) {
+            AtomicLongArray slots = segment.table.slots;
+            for (int i = 0; i < slots.length(); i++) {
+                long value = slots.get(i);
+                if (value != EMPTY && value != MOVED) {
+                    consumer.accept(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 64-битный отпечаток строки: FNV-1a по UTF-8 байтам с финальным перемешиванием из MurmurHash3.
+     */
+    public static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Сегмент с таблицей линейного пробирования. При заполнении на три четверти
+     * таблица удваивается: поток, выигравший compareAndSet ссылки next, переносит значения,
+     * а пустые ячейки старой таблицы помечает MOVED. Остальные потоки, встретив MOVED,
+     * дожидаются окончания переноса и продолжают в новой таблице.
+     */
+    private static class Segment {
+        private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+
+        boolean add(long fingerprint) {
+            while (true) {
+                Table current = table;
+                int result = current.add(fingerprint);
+                if (result == Table.ADDED) {
+                    if (current.count.incrementAndGet() > current.threshold) {
+                        resize(current);
+                    }
+                    return true;
+                }
+                if (result == Table.PRESENT) {
+                    return false;
+                }
+                awaitResize(current);
+            }
+        }
+
+        boolean contains(long fingerprint) {
+            while (true) {
+                Table current = table;
+                int result = current.find(fingerprint);
+                if (result != Table.MOVED_FOUND) {
+                    return result == Table.PRESENT;
+                }
+                awaitResize(current);
+            }
+        }
+
+        private void resize(Table current) {
+            Table next = new Table(current.slots.length() * 2);
+            if (!current.next.compareAndSet(null, next)) {
+                return;
+            }
+            for (int i = 0; i < current.slots.length(); i++) {
+                long value = current.slots.get(i);
+                while (value == EMPTY) {
+                    if (current.slots.compareAndSet(i, EMPTY, MOVED)) {
+                        break;
+                    }
+                    value = current.slots.get(i);
+                }
+                if (value != EMPTY && value != MOVED && next.add(value) == Table.ADDED) {
+                    next.count.incrementAndGet();
+                }
+            }
+            table = next;
+        }
+
+        /**
+         * Перенос занимает микросекунды, поэтому ожидание сначала активное. Дальше поток
+         * уступает процессор: потоки обхода виртуальные, и активное ожидание заняло бы
+         * поток-носитель, который может понадобиться самому переносящему потоку.
+         */
+        private void awaitResize(Table current) {
+            for (int spins = 0; table == current; spins++) {
+                if (spins < MAX_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private static class Table {
+        static final int ADDED = 0;
+        static final int PRESENT = 1;
+        static final int ABSENT = 2;
+        static final int MOVED_FOUND = 3;
+
+        final AtomicLongArray slots;
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicReference<Table> next = new AtomicReference<>();
+        final int threshold;
+
+        Table(int capacity) {
+            slots = new AtomicLongArray(capacity);
+            threshold = capacity / 4 * 3;
+        }
+
+        int add(long fingerprint) {
+            int mask = slots.length() - 1;
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes <= mask; ) {
+                long value = slots.get(index);
+                if (value == fingerprint) {
+                    return PRESENT;
+                }
+                if (value == MOVED) {
+                    return MOVED_FOUND;
+                }
+                if (value == EMPTY) {
+                    if (slots.compareAndSet(index, EMPTY, fingerprint)) {
+                        return ADDED;
+                    }
+                    continue;
+                }
+                index = (index + 1) & mask;
+                probes++;
+            }
+            // таблица заполнена до отказа, значит её уже переносит поток, превысивший порог
+            return MOVED_FOUND;
+        }
+
+        int find(long fingerprint) {
+            int mask = slots.length() - 1;
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long value = slots.get(index);
+                if (value == fingerprint) {
+                    return PRESENT;
+                }
+                if (value == MOVED) {
+                    return MOVED_FOUND;
+                }
+                if (value == EMPTY) {
+                    return ABSENT;
+                }
+                index = (index + 1) & mask;
+            }
+            return MOVED_FOUND;
+        }
+    }
+}
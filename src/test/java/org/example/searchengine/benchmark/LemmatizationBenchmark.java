@@ -0,0 +1,171 @@
+package org.example.searchengine.benchmark;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.example.searchengine.config.LemmaSettings;
+import org.example.searchengine.util.LemmaFinder;
+import org.example.searchengine.util.RussianTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лемматизация текста страницы: разбор на слова прежним способом (replaceAll и split)
+ * и однопроходным {@link RussianTokenizer}, а также {@link LemmaFinder#getLemmaPositions}
+ * целиком в сравнении с прежним подсчётом лемм без кэша словоформ.
+ * <p>
+ * Текст составляется из словаря примерно в шестьсот словоформ (существительные, прилагательные
+ * и глаголы во всех окончаниях, служебные слова, числа и латиница) с частотами по закону Ципфа, как в обычном тексте.
+ * {@link LemmaFinder#getLemmaPositions} измеряется и с отключённым кэшем словоформ ({@code cacheSize = 0}),
+ * когда каждое слово разбирается морфологией, и с кэшем по умолчанию, когда после прогрева
+ * почти все слова берутся из кэша.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.example.searchengine.benchmark.LemmatizationBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LemmatizationBenchmark {
+    private static final String[] FUNCTION_WORDS = {
+            "и", "в", "на", "по", "с", "не", "что", "как", "к", "из", "за", "для", "но", "или", "от"};
+    private static final String[] OTHER_TOKENS = {
+            "2024", "Java,", "—", "(см.", "раздел)", "ещё", "Ёлка", "search-engine"};
+    private static final String[][][] PARADIGMS = {
+            {{"стол", "дом", "сайт", "запрос", "поиск", "индекс", "текст", "город", "завод", "ответ",
+                    "адрес", "список", "документ", "раздел", "сервер"},
+                    {"", "а", "у", "ом", "е", "ы", "ов", "ам", "ами", "ах"}},
+            {{"лемм", "школ", "работ", "карт", "машин", "комнат", "газет", "минут", "погод", "систем",
+                    "программ", "форм", "строк", "задач", "тем"},
+                    {"а", "ы", "е", "у", "ой", "ам", "ами", "ах"}},
+            {{"нов", "стар", "красив", "быстр", "полезн", "интересн", "важн", "длинн", "светл", "точн",
+                    "умн", "сложн", "последн", "главн", "поисков"},
+                    {"ый", "ая", "ое", "ые", "ого", "ому", "ой", "ую", "ым", "ыми", "ых"}},
+            {{"чита", "дела", "зна", "игра", "отвеча", "понима", "работа", "слуша", "изуча", "получа",
+                    "индексирова", "обновля", "загружа", "проверя", "сохраня"},
+                    {"ть", "ю", "ешь", "ет", "ем", "ете", "ют", "л", "ла", "ли"}}};
+
+    @Param({"2000"})
+    private int wordCount;
+
+    @Param({"0", "100000"})
+    private int cacheSize;
+
+    private String text;
+    private LemmaFinder lemmaFinder;
+    private LuceneMorphology morphology;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<String> vocabulary = createVocabulary(random);
+        double[] cumulativeFrequencies = getZipfCumulativeFrequencies(vocabulary.size());
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            int rank = Arrays.binarySearch(cumulativeFrequencies, random.nextDouble());
+            String word = vocabulary.get(rank >= 0 ? rank : -rank - 1);
+            if (i % 12 == 0) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+            builder.append(word).append(i % 12 == 11 ? ". " : " ");
+        }
+        text = builder.toString();
+        LemmaSettings lemmaSettings = new LemmaSettings();
+        lemmaSettings.setCacheSize(cacheSize);
+        lemmaFinder = new LemmaFinder(lemmaSettings);
+        morphology = new RussianLuceneMorphology();
+    }
+
+    @Benchmark
+    public String[] splitWithRegex() {
+        return splitRussianWords(text);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        RussianTokenizer.tokenize(text, (buffer, length, position, offset) -> blackhole.consume(length));
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> countLemmasWithRegex() {
+        HashMap<String, Integer> lemmas = new HashMap<>();
+        for (String word : splitRussianWords(text)) {
+            if (word.isBlank()) {
+                continue;
+            }
+            List<String> wordBaseForms = morphology.getMorphInfo(word);
+            if (wordBaseForms.stream().anyMatch(LemmatizationBenchmark::isParticle)) {
+                continue;
+            }
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (!normalForms.isEmpty()) {
+                lemmas.merge(normalForms.get(0), 1, Integer::sum);
+            }
+        }
+        return lemmas;
+    }
+
+    @Benchmark
+    public HashMap<String, int[]> getLemmaPositions() {
+        return lemmaFinder.getLemmaPositions(text);
+    }
+
+    /**
+     * Словоформы перемешиваются, чтобы частые и редкие слова не группировались по частям речи;
+     * служебные слова в обычном тексте самые частые и стоят в начале.
+     */
+    private static List<String> createVocabulary(Random random) {
+        List<String> wordForms = new ArrayList<>();
+        for (String[][] paradigm : PARADIGMS) {
+            for (String stem : paradigm[0]) {
+                for (String ending : paradigm[1]) {
+                    wordForms.add(stem + ending);
+                }
+            }
+        }
+        wordForms.addAll(List.of(OTHER_TOKENS));
+        Collections.shuffle(wordForms, random);
+        List<String> vocabulary = new ArrayList<>(List.of(FUNCTION_WORDS));
+        vocabulary.addAll(wordForms);
+        return vocabulary;
+    }
+
+    private static double[] getZipfCumulativeFrequencies(int size) {
+        double[] frequencies = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / (rank + 1);
+            frequencies[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            frequencies[rank] /= sum;
+        }
+        return frequencies;
+    }
+
+    private static String[] splitRussianWords(String text) {
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("([^а-яё\\s])", " ")
+                .trim()
+                .split("\\s+");
+    }
+
+    private static boolean isParticle(String wordBase) {
+        String upperCase = wordBase.toUpperCase();
+        return upperCase.contains("МЕЖД") || upperCase.contains("ПРЕДЛ")
+                || upperCase.contains("СОЮЗ") || upperCase.contains("ЧАСТ");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LemmatizationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
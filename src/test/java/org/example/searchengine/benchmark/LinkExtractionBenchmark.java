@@ -0,0 +1,104 @@
+package org.example.searchengine.benchmark;
+
+import org.example.searchengine.util.UrlNormalizer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Отбор ссылок страницы на страницы сайта: прежняя проверка регулярными выражениями
+ * и {@link UrlNormalizer}. Документ разбирается один раз, измеряется только обработка ссылок.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.example.searchengine.benchmark.LinkExtractionBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkExtractionBenchmark {
+    private static final String SITE_URL = "https://example.com/";
+    private static final String[] HREFS = {
+            "/catalog/books/", "/news/2024/10/item.html", "page?id=7", "#top", "/files/report.pdf",
+            "https://example.com/about", "https://EXAMPLE.com:443/contacts/", "https://other.org/page",
+            "mailto:info@example.com", "/v1.2/docs", "../up/level", "/search?q=java#results"};
+
+    @Param({"500"})
+    private int linkCount;
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < linkCount; i++) {
+            html.append("<a href=\"").append(HREFS[random.nextInt(HREFS.length)]).append("\">ссылка</a>");
+        }
+        document = Jsoup.parse(html.append("</body></html>").toString(), SITE_URL + "section/index.html");
+    }
+
+    @Benchmark
+    public Map<String, String> extractWithRegex() {
+        Map<String, String> links = new HashMap<>();
+        for (Element element : document.select("a")) {
+            String abs = element.attr("abs:href");
+            String rel = getRelUrlWithRegex(abs);
+            if (isPageLinkWithRegex(abs, rel)) {
+                links.put(abs, rel);
+            }
+        }
+        return links;
+    }
+
+    @Benchmark
+    public Map<String, String> extractWithNormalizer() {
+        Map<String, String> links = new HashMap<>();
+        for (Element element : document.select("a[href]")) {
+            String abs = UrlNormalizer.normalize(element.absUrl("href"));
+            if (UrlNormalizer.isPageLink(SITE_URL, abs)) {
+                links.put(abs, UrlNormalizer.getRelUrl(abs));
+            }
+        }
+        return links;
+    }
+
+    private static boolean isPageLinkWithRegex(String abs, String rel) {
+        if (!abs.matches(SITE_URL + ".*")) {
+            return false;
+        }
+        if (!rel.matches("^/.*")) {
+            return false;
+        }
+        if (rel.matches(".*\\..*") && !rel.matches(".*\\.html")) {
+            return false;
+        }
+        return !rel.matches(".*#.*");
+    }
+
+    private static String getRelUrlWithRegex(String absUrl) {
+        Matcher matcher = Pattern.compile("https?://[^/]+(/[^?#]*)").matcher(absUrl);
+        if (matcher.find()) {
+            String path = matcher.group(1);
+            return path.isEmpty() ? "/" : path;
+        }
+        return "/";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LinkExtractionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class Bm25Test {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Test
+    void rankingMatchesReferenceComputation() {
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            int pageCount = 1 + random.nextInt(200);
+            int lemmaCount = 1 + random.nextInt(4);
+            // страница - частоты лемм запроса и длина
+            TreeMap<Long, int[]> frequencies = new TreeMap<>();
+            TreeMap<Long, Integer> lengths = new TreeMap<>();
+            int[] documentFrequencies = new int[lemmaCount];
+            for (long pageId = 1; pageId <= pageCount; pageId++) {
+                int[] pageFrequencies = new int[lemmaCount];
+                int length = 1 + random.nextInt(500);
+                for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                    if (random.nextInt(3) == 0) {
+                        pageFrequencies[lemma] = 1 + random.nextInt(20);
+                        documentFrequencies[lemma]++;
+                        length += pageFrequencies[lemma];
+                    }
+                }
+                frequencies.put(pageId, pageFrequencies);
+                lengths.put(pageId, length);
+            }
+            double averageLength = lengths.values().stream().mapToInt(Integer::intValue).average().orElse(0);
+
+            for (Map.Entry<Long, int[]> page : frequencies.entrySet()) {
+                float lengthNorm = Bm25.lengthNorm(lengths.get(page.getKey()), (float) averageLength);
+                double expected = 0;
+                float actual = 0;
+                for (int lemma = 0; lemma < lemmaCount; lemma++) {
+                    int frequency = page.getValue()[lemma];
+                    if (frequency == 0) {
+                        continue;
+                    }
+                    expected += referenceScore(frequency, documentFrequencies[lemma], pageCount,
+                            lengths.get(page.getKey()), averageLength);
+                    actual += Bm25.score(frequency, Bm25.idf(pageCount, documentFrequencies[lemma]), lengthNorm);
+                }
+                assertThat((double) actual).isCloseTo(expected, within(1e-3 * Math.max(1, expected)));
+            }
+        }
+    }
+
+    @Test
+    void rarerLemmaWeighsMore() {
+        assertThat(Bm25.idf(1000, 10)).isGreaterThan(Bm25.idf(1000, 100));
+        assertThat(Bm25.idf(1000, 1000)).isPositive();
+    }
+
+    @Test
+    void scoreSaturatesWithFrequency() {
+        float idf = Bm25.idf(100, 5);
+        float lengthNorm = Bm25.lengthNorm(100, 100);
+
+        assertThat(Bm25.score(2, idf, lengthNorm)).isGreaterThan(Bm25.score(1, idf, lengthNorm));
+        assertThat(Bm25.score(1000, idf, lengthNorm)).isLessThan((float) (idf * (K1 + 1)));
+    }
+
+    @Test
+    void longerPageScoresLower() {
+        float idf = Bm25.idf(100, 5);
+
+        assertThat(Bm25.score(3, idf, Bm25.lengthNorm(50, 100)))
+                .isGreaterThan(Bm25.score(3, idf, Bm25.lengthNorm(400, 100)));
+    }
+
+    private static double referenceScore(int frequency, int documentFrequency, int pageCount,
+                                         int length, double averageLength) {
+        double idf = Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CrawlCheckpointTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoresVisitedUrlsFrontierAndInFlightPages() throws Exception {
+        VisitedUrlSet visitedUrls = new VisitedUrlSet();
+        visitedUrls.add("/");
+        visitedUrls.add("/done");
+        visitedUrls.add("/queued");
+        visitedUrls.add("/spilled");
+        visitedUrls.add("/in-flight");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(dir, 1L);
+        try (CrawlFrontier frontier = new CrawlFrontier(1, dir, "site-1")) {
+            frontier.add(entry("/queued", 1));
+            frontier.add(entry("/spilled", 2));
+            checkpoint.save(visitedUrls, frontier, List.of(entry("/in-flight", 1)));
+        }
+        assertThat(checkpoint.exists()).isTrue();
+
+        VisitedUrlSet restoredUrls = new VisitedUrlSet();
+        try (CrawlFrontier restoredFrontier = new CrawlFrontier(1, dir, "restored-1")) {
+            Set<String> pendingPaths = checkpoint.restore(restoredUrls, restoredFrontier);
+
+            assertThat(pendingPaths).containsExactlyInAnyOrder("/in-flight", "/queued", "/spilled");
+            assertThat(restoredUrls.size()).isEqualTo(visitedUrls.size());
+            assertThat(restoredUrls.contains("/done")).isTrue();
+            assertThat(restoredUrls.contains("/missing")).isFalse();
+            List<FrontierEntry> polled = new ArrayList<>();
+            while (!restoredFrontier.isEmpty()) {
+                polled.add(restoredFrontier.poll(0, TimeUnit.MILLISECONDS));
+            }
+            assertThat(polled).containsExactly(entry("/in-flight", 1), entry("/queued", 1), entry("/spilled", 2));
+        }
+
+        checkpoint.delete();
+        assertThat(checkpoint.exists()).isFalse();
+    }
+
+    @Test
+    void rejectsUnknownVersion() throws Exception {
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(dir.resolve("site-1.checkpoint")))) {
+            output.writeInt(Integer.MAX_VALUE);
+            output.writeBoolean(false);
+            output.writeBoolean(false);
+        }
+
+        assertThatThrownBy(() -> restore(new CrawlCheckpoint(dir, 1L)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws Exception {
+        VisitedUrlSet visitedUrls = new VisitedUrlSet();
+        visitedUrls.add("/");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(dir, 1L);
+        try (CrawlFrontier frontier = new CrawlFrontier(10, dir, "site-1")) {
+            frontier.add(entry("/queued", 1));
+            checkpoint.save(visitedUrls, frontier, List.of());
+        }
+        Path path = dir.resolve("site-1.checkpoint");
+        byte[] content = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(content, content.length - 3));
+
+        assertThatThrownBy(() -> restore(checkpoint)).isInstanceOf(IOException.class);
+    }
+
+    private void restore(CrawlCheckpoint checkpoint) throws IOException {
+        try (CrawlFrontier frontier = new CrawlFrontier(10, dir, "restored-1")) {
+            checkpoint.restore(new VisitedUrlSet(), frontier);
+        }
+    }
+
+    private static FrontierEntry entry(String relUrl, int depth) {
+        return new FrontierEntry("https://example.com" + relUrl, relUrl, depth);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CrawlFrontierTest {
+    @TempDir
+    Path spillDir;
+
+    /**
+     * В памяти помещаются два адреса: остальные уходят в файлы, но выдаются
+     * всё равно по глубине, а внутри одной глубины - в порядке добавления.
+     */
+    @Test
+    void pollsByDepthThenInsertionOrderAcrossSpills() throws Exception {
+        try (CrawlFrontier frontier = new CrawlFrontier(2, spillDir, "site-1")) {
+            frontier.add(entry("/a", 1));
+            frontier.add(entry("/b", 1));
+            frontier.add(entry("/c", 1));
+            frontier.add(entry("/d", 2));
+            frontier.add(entry("/e", 0));
+            frontier.add(entry("/f", 1));
+            frontier.add(entry("/g", 2));
+            assertThat(frontier.size()).isEqualTo(7);
+            assertThat(spillFiles()).isNotEmpty();
+
+            List<String> polled = new ArrayList<>();
+            polled.add(frontier.poll(0, TimeUnit.MILLISECONDS).relUrl());
+            polled.add(frontier.poll(0, TimeUnit.MILLISECONDS).relUrl());
+            // адрес, добавленный во время обхода, встаёт за уже ожидающими той же глубины
+            frontier.add(entry("/h", 1));
+            while (!frontier.isEmpty()) {
+                polled.add(frontier.poll(0, TimeUnit.MILLISECONDS).relUrl());
+            }
+
+            assertThat(polled).containsExactly("/e", "/a", "/b", "/c", "/f", "/h", "/d", "/g");
+            assertThat(frontier.poll(10, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(spillFiles()).isEmpty();
+        }
+    }
+
+    @Test
+    void snapshotListsSpilledEntriesWithoutPollingThem() throws Exception {
+        try (CrawlFrontier frontier = new CrawlFrontier(1, spillDir, "site-1")) {
+            frontier.add(entry("/a", 0));
+            frontier.add(entry("/b", 1));
+            frontier.add(entry("/c", 1));
+            frontier.poll(0, TimeUnit.MILLISECONDS);
+            frontier.poll(0, TimeUnit.MILLISECONDS);
+
+            List<String> snapshot = new ArrayList<>();
+            frontier.snapshot(entry -> snapshot.add(entry.relUrl()));
+
+            assertThat(snapshot).containsExactly("/c");
+            assertThat(frontier.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void closeRemovesSpillFiles() throws Exception {
+        CrawlFrontier frontier = new CrawlFrontier(1, spillDir, "site-1");
+        for (int depth = 0; depth < 3; depth++) {
+            frontier.add(entry("/first-" + depth, depth));
+            frontier.add(entry("/second-" + depth, depth));
+        }
+        assertThat(spillFiles()).isNotEmpty();
+
+        frontier.close();
+
+        assertThat(spillFiles()).isEmpty();
+        assertThat(frontier.isEmpty()).isTrue();
+    }
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.toList();
+        }
+    }
+
+    private static FrontierEntry entry(String relUrl, int depth) {
+        return new FrontierEntry("https://example.com" + relUrl, relUrl, depth);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.repositories.LemmaRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LemmaDictionaryTest {
+    private static final Long SITE_ID = 1L;
+
+    @Test
+    void lemmaIdsAreReservedWithoutFrequency() {
+        LemmaRepository lemmaRepository = mock(LemmaRepository.class);
+        when(lemmaRepository.upsertLemmas(eq(SITE_ID), anyMap()))
+                .thenReturn(Map.of("белка", 10L, "стекло", 11L));
+        LemmaDictionary dictionary = new LemmaDictionary(lemmaRepository, SITE_ID, 100);
+
+        Map<String, Long> ids = dictionary.getLemmaIds(List.of("белка", "стекло"));
+        Map<String, Long> cachedIds = dictionary.getLemmaIds(List.of("белка"));
+
+        assertThat(ids).containsEntry("белка", 10L).containsEntry("стекло", 11L);
+        assertThat(cachedIds).containsExactly(Map.entry("белка", 10L));
+        verify(lemmaRepository).upsertLemmas(SITE_ID, Map.of("белка", 0, "стекло", 0));
+        dictionary.flush();
+        verifyNoMoreInteractions(lemmaRepository);
+    }
+
+    @Test
+    void frequenciesAreWrittenOnlyForAddedPages() {
+        LemmaRepository lemmaRepository = mock(LemmaRepository.class);
+        LemmaDictionary dictionary = new LemmaDictionary(lemmaRepository, SITE_ID, 2);
+
+        dictionary.addPage(List.of("белка", "стекло"));
+        verifyNoInteractions(lemmaRepository);
+        dictionary.addPage(List.of("белка"));
+
+        verify(lemmaRepository).upsertLemmas(SITE_ID, Map.of("белка", 2, "стекло", 1));
+    }
+
+    @Test
+    void failedFlushKeepsIncrements() {
+        LemmaRepository lemmaRepository = mock(LemmaRepository.class);
+        when(lemmaRepository.upsertLemmas(eq(SITE_ID), anyMap()))
+                .thenThrow(new IllegalStateException("нет соединения"))
+                .thenReturn(Map.of());
+        LemmaDictionary dictionary = new LemmaDictionary(lemmaRepository, SITE_ID, 100);
+
+        dictionary.addPage(List.of("белка"));
+        dictionary.flush();
+        dictionary.flush();
+
+        verify(lemmaRepository, times(2)).upsertLemmas(SITE_ID, Map.of("белка", 1));
+    }
+}
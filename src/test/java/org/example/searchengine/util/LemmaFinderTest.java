@@ -0,0 +1,50 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.config.LemmaSettings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LemmaFinderTest {
+    private static LemmaFinder lemmaFinder;
+
+    @BeforeAll
+    static void createLemmaFinder() {
+        lemmaFinder = new LemmaFinder(new LemmaSettings());
+    }
+
+    @Test
+    void queryLemmasMatchIndexedLemmas() {
+        Map<String, int[]> indexed = lemmaFinder.getLemmaPositions("Белка прыгает по стеклу");
+        Set<String> query = lemmaFinder.getLemmaSet("белка стекло");
+
+        assertThat(indexed).containsKeys(query.toArray(String[]::new));
+    }
+
+    @Test
+    void wordWithSeveralNormalFormsGivesOneLemma() {
+        for (String word : new String[]{"белка", "стекло", "стали", "мой", "дали", "полей", "мыла"}) {
+            Set<String> query = lemmaFinder.getLemmaSet(word);
+
+            assertThat(query).hasSize(1);
+            assertThat(lemmaFinder.getLemmaPositions(word).keySet()).isEqualTo(query);
+        }
+    }
+
+    @Test
+    void particlesAreSkipped() {
+        assertThat(lemmaFinder.getLemmaSet("по и на")).isEmpty();
+        assertThat(lemmaFinder.getLemmaPositions("Белка прыгает по стеклу")).doesNotContainKey("по");
+    }
+
+    @Test
+    void positionsAreWordNumbers() {
+        Map<String, int[]> lemmas = lemmaFinder.getLemmaPositions("Белка прыгает, белка спит");
+
+        assertThat(lemmas.get("белка")).containsExactly(0, 2);
+    }
+}
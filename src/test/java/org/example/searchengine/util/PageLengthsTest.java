@@ -0,0 +1,46 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PageLengthsTest {
+
+    @Test
+    void matchesHashMapAfterRandomUpdates() {
+        Random random = new Random(4);
+        PageLengths pageLengths = new PageLengths();
+        Map<Long, Integer> expected = new HashMap<>();
+        long[] pageIds = new long[3000];
+        for (int i = 0; i < pageIds.length; i++) {
+            pageIds[i] = i + 1;
+        }
+
+        for (int step = 0; step < 200_000; step++) {
+            long pageId = 1 + random.nextInt(pageIds.length);
+            if (random.nextInt(3) == 0) {
+                pageLengths.remove(pageId);
+                expected.remove(pageId);
+            } else {
+                int delta = random.nextInt(50);
+                pageLengths.add(pageId, delta);
+                expected.merge(pageId, delta, Integer::sum);
+            }
+
+            if (step % 1000 == 0) {
+                float[] lengths = new float[pageIds.length];
+                pageLengths.getLengths(pageIds, pageIds.length, lengths);
+                for (int i = 0; i < pageIds.length; i++) {
+                    assertThat(lengths[i]).isEqualTo((float) expected.getOrDefault(pageIds[i], 0));
+                }
+                assertThat(pageLengths.size()).isEqualTo(expected.size());
+                assertThat(pageLengths.getTotalLength())
+                        .isEqualTo(expected.values().stream().mapToLong(Integer::longValue).sum());
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.model.PageEntity;
+import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.repositories.IndexRepository;
+import org.example.searchengine.repositories.PageRepository;
+import org.example.searchengine.repositories.SiteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PageWriterTest {
+    private final AtomicLong nextPageId = new AtomicLong(1);
+    private PageRepository pageRepository;
+    private IndexRepository indexRepository;
+    private TransactionTemplate transactionTemplate;
+    private LemmaDictionary lemmaDictionary;
+    private InvertedIndex invertedIndex;
+    private SiteEntity siteEntity;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        pageRepository = mock(PageRepository.class);
+        when(pageRepository.save(any(PageEntity.class))).thenAnswer(invocation -> {
+            PageEntity pageEntity = invocation.getArgument(0);
+            pageEntity.setId(nextPageId.getAndIncrement());
+            return pageEntity;
+        });
+        indexRepository = mock(IndexRepository.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Consumer.class).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        lemmaDictionary = mock(LemmaDictionary.class);
+        when(lemmaDictionary.getLemmaIds(anyCollection())).thenReturn(Map.of("белка", 1L));
+        invertedIndex = mock(InvertedIndex.class);
+        siteEntity = new SiteEntity();
+        siteEntity.setId(1L);
+        siteEntity.setUrl("https://example.com/");
+    }
+
+    @Test
+    void pagesWaitingDuringWriteAreWrittenAsOneBatch() throws Exception {
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Map<Long, ?> pages = invocation.getArgument(0);
+            batchSizes.add(pages.size());
+            if (batchSizes.size() == 1) {
+                firstWriteStarted.countDown();
+                releaseFirstWrite.await();
+            }
+            return null;
+        }).when(indexRepository).insertIndexes(anyMap());
+        PageWriter pageWriter = createWriter(16, 4);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> writes = new ArrayList<>();
+            writes.add(executor.submit(() -> write(pageWriter, "/0")));
+            firstWriteStarted.await();
+            for (int i = 1; i < 8; i++) {
+                String path = "/" + i;
+                writes.add(executor.submit(() -> write(pageWriter, path)));
+            }
+            Thread.sleep(200);
+            releaseFirstWrite.countDown();
+            for (Future<?> write : writes) {
+                write.get(10, TimeUnit.SECONDS);
+            }
+        }
+        pageWriter.close();
+
+        assertThat(batchSizes).containsExactly(1, 4, 3);
+        verify(lemmaDictionary, times(8)).addPage(anyCollection());
+        verify(invertedIndex, times(8)).addPage(eq(1L), anyLong(), anyMap());
+    }
+
+    @Test
+    void failedBatchIsRetriedPageByPage() throws Exception {
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            firstWriteStarted.countDown();
+            releaseFirstWrite.await();
+            return null;
+        }).when(indexRepository).insertIndexes(anyMap());
+        // страница /bad не записывается ни в пакете, ни отдельно
+        when(pageRepository.save(argThat((PageEntity page) -> page != null && "/bad".equals(page.getPath()))))
+                .thenThrow(new IllegalStateException("ошибка записи страницы"));
+        PageWriter pageWriter = createWriter(16, 4);
+        Set<String> failedPaths = ConcurrentHashMap.newKeySet();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> writes = new ArrayList<>();
+            writes.add(executor.submit(() -> write(pageWriter, "/0")));
+            firstWriteStarted.await();
+            for (String path : List.of("/1", "/bad", "/2")) {
+                writes.add(executor.submit(() -> {
+                    try {
+                        return write(pageWriter, path);
+                    } catch (IllegalStateException e) {
+                        failedPaths.add(path);
+                        return null;
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            releaseFirstWrite.countDown();
+            for (Future<?> write : writes) {
+                write.get(10, TimeUnit.SECONDS);
+            }
+        }
+        pageWriter.close();
+
+        assertThat(failedPaths).containsExactly("/bad");
+        // частоты лемм учитываются только для записанных страниц
+        verify(lemmaDictionary, times(3)).addPage(anyCollection());
+        verify(invertedIndex, times(3)).addPage(eq(1L), anyLong(), anyMap());
+        // пакет из трёх страниц и повторная запись каждой из них по одной
+        verify(transactionTemplate, times(5)).executeWithoutResult(any());
+    }
+
+    @Test
+    void closeWritesQueuedPagesAndRejectsNewOnes() throws Exception {
+        PageWriter pageWriter = createWriter(4, 2);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                String path = "/" + i;
+                writes.add(executor.submit(() -> write(pageWriter, path)));
+            }
+            for (Future<?> write : writes) {
+                write.get(10, TimeUnit.SECONDS);
+            }
+        }
+
+        pageWriter.close();
+
+        verify(invertedIndex, times(6)).addPage(eq(1L), anyLong(), anyMap());
+        assertThatThrownBy(() -> write(pageWriter, "/late")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void writesRacingWithCloseNeverHang() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            PageWriter pageWriter = createWriter(2, 2);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> writes = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    String path = "/" + i;
+                    writes.add(executor.submit(() -> {
+                        try {
+                            return write(pageWriter, path);
+                        } catch (IllegalStateException e) {
+                            // запись после close() отклоняется
+                            return null;
+                        }
+                    }));
+                }
+                pageWriter.close();
+                for (Future<?> write : writes) {
+                    write.get(10, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    private PageWriter createWriter(int queueCapacity, int batchSize) {
+        return new PageWriter(pageRepository, indexRepository, mock(SiteRepository.class), transactionTemplate,
+                lemmaDictionary, invertedIndex, siteEntity, queueCapacity, batchSize);
+    }
+
+    private Void write(PageWriter pageWriter, String path) throws InterruptedException {
+        PageEntity pageEntity = new PageEntity();
+        pageEntity.setPath(path);
+        pageWriter.write(pageEntity, Map.of("белка", new int[]{0}));
+        return null;
+    }
+}
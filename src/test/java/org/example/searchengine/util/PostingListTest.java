@@ -0,0 +1,96 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PostingListTest {
+
+    @Test
+    void decodeMatchesTreeMapAfterRandomUpdates() {
+        Random random = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            PostingList list = new PostingList();
+            TreeMap<Long, Float> expected = fill(list, random, round);
+
+            PostingList.Postings postings = list.decode();
+
+            assertThat(list.size()).isEqualTo(expected.size());
+            assertThat(postings.pageIds()).containsExactly(toArray(expected.keySet()));
+            for (int i = 0; i < postings.size(); i++) {
+                assertThat(postings.ranks()[i]).isEqualTo(expected.get(postings.pageIds()[i]));
+            }
+        }
+    }
+
+    @Test
+    void intersectMatchesTreeMap() {
+        Random random = new Random(2);
+        float idf = 1.5f;
+        for (int round = 0; round < 1000; round++) {
+            PostingList list = new PostingList();
+            TreeMap<Long, Float> expected = fill(list, random, round);
+
+            TreeSet<Long> candidates = new TreeSet<>();
+            int candidateCount = random.nextInt(300);
+            for (int i = 0; i < candidateCount; i++) {
+                candidates.add(1L + random.nextInt(5200));
+            }
+            long[] pageIds = toArray(candidates);
+            float[] scores = new float[pageIds.length];
+            float[] lengthNorms = new float[pageIds.length];
+            for (int i = 0; i < pageIds.length; i++) {
+                scores[i] = pageIds[i] % 7;
+                lengthNorms[i] = 0.5f + pageIds[i] % 3;
+            }
+
+            int kept = list.intersect(pageIds, scores, lengthNorms, pageIds.length, idf);
+
+            List<Long> expectedIds = candidates.stream().filter(expected::containsKey).toList();
+            assertThat(kept).isEqualTo(expectedIds.size());
+            for (int i = 0; i < kept; i++) {
+                long pageId = expectedIds.get(i);
+                float lengthNorm = 0.5f + pageId % 3;
+                assertThat(pageIds[i]).isEqualTo(pageId);
+                assertThat(lengthNorms[i]).isEqualTo(lengthNorm);
+                assertThat(scores[i]).isCloseTo(pageId % 7 + Bm25.score(expected.get(pageId), idf, lengthNorm),
+                        within(1e-4f));
+            }
+        }
+    }
+
+    @Test
+    void intersectWithEmptyListRemovesAllCandidates() {
+        long[] pageIds = {1, 2, 3};
+
+        int kept = new PostingList().intersect(pageIds, new float[3], new float[3], 3, 1f);
+
+        assertThat(kept).isZero();
+    }
+
+    /**
+     * Заполняет список случайными вхождениями, в том числе не по возрастанию и с удалениями.
+     */
+    private static TreeMap<Long, Float> fill(PostingList list, Random random, int round) {
+        TreeMap<Long, Float> expected = new TreeMap<>();
+        int count = random.nextInt(round % 3 == 0 ? 5 : 1000);
+        for (int i = 0; i < count; i++) {
+            long pageId = 1 + random.nextInt(5000);
+            float rank = 1 + random.nextInt(10);
+            list.add(pageId, rank);
+            expected.put(pageId, rank);
+        }
+        for (int i = 0; i < count / 5; i++) {
+            long pageId = 1 + random.nextInt(5000);
+            assertThat(list.remove(pageId)).isEqualTo(expected.remove(pageId) != null);
+        }
+        return expected;
+    }
+
+    private static long[] toArray(Collection<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+}
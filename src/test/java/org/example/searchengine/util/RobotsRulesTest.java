@@ -0,0 +1,69 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RobotsRulesTest {
+
+    @Test
+    void leadingWildcardMatchesAnyPrefix() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: *utm_
+                """);
+
+        assertThat(rules.isAllowed("/a/utm_x")).isFalse();
+        assertThat(rules.isAllowed("/utm_x")).isFalse();
+        assertThat(rules.isAllowed("/a/b")).isTrue();
+    }
+
+    @Test
+    void wildcardInsideAndEndAnchor() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /private*/draft
+                Disallow: /*.pdf$
+                """);
+
+        assertThat(rules.isAllowed("/private/2024/draft")).isFalse();
+        assertThat(rules.isAllowed("/docs/file.pdf")).isFalse();
+        assertThat(rules.isAllowed("/docs/file.pdf?page=2")).isTrue();
+        assertThat(rules.isAllowed("/public/draft")).isTrue();
+    }
+
+    @Test
+    void longestRuleWinsAndAllowWinsTie() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /catalog
+                Allow: /catalog/books
+                Disallow: /news
+                Allow: /news
+                """);
+
+        assertThat(rules.isAllowed("/catalog/toys")).isFalse();
+        assertThat(rules.isAllowed("/catalog/books/1")).isTrue();
+        assertThat(rules.isAllowed("/news/1")).isTrue();
+    }
+
+    @Test
+    void onlyGroupForAllAgentsApplies() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: Googlebot
+                Disallow: /
+
+                User-agent: *
+                Crawl-delay: 0.5
+                Disallow: /admin
+                Sitemap: https://example.com/sitemap.xml
+                """);
+
+        assertThat(rules.isAllowed("/page")).isTrue();
+        assertThat(rules.isAllowed("/admin/users")).isFalse();
+        assertThat(rules.getCrawlDelay()).isEqualTo(Duration.ofMillis(500));
+        assertThat(rules.getSitemaps()).containsExactly("https://example.com/sitemap.xml");
+    }
+}
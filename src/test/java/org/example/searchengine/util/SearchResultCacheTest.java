@@ -0,0 +1,29 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.config.SearchSettings;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchResultCacheTest {
+    private static final SearchResultCache.Key KEY = SearchResultCache.Key.of(Set.of("белка", "лес"), "");
+
+    @Test
+    void staleResultIsRemovedAndCountedOnceAsMiss() {
+        SearchResultCache cache = new SearchResultCache(new SearchSettings());
+        long[] siteIds = {1, 2};
+        cache.put(KEY, new SearchResultCache.RankedPages(siteIds, new long[]{5, 7}, new long[]{10}, new float[]{1}, 1));
+
+        assertThat(cache.get(KEY, siteIds, new long[]{5, 7})).isNotNull();
+        assertThat(cache.get(KEY, siteIds, new long[]{5, 8})).isNull();
+        assertThat(cache.get(KEY, new long[]{1}, new long[]{5})).isNull();
+        assertThat(cache.get(SearchResultCache.Key.of(Set.of("лес", "белка"), ""), siteIds, new long[]{5, 7}))
+                .isNull();
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(3);
+        assertThat(cache.getSize()).isZero();
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.model.SiteEntity;
+import org.example.searchengine.model.Status;
+import org.example.searchengine.repositories.SiteRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class SitemapLastmodTest {
+
+    @Test
+    void dateOnlyLastmodIsEndOfDay() {
+        Instant lastmod = SitemapReader.parseLastmod("2024-05-10");
+
+        assertThat(lastmod).isAfterOrEqualTo(Instant.parse("2024-05-11T00:00:00Z"));
+        assertThat(SitemapReader.parseLastmod("2024-05-10T08:30:00+03:00"))
+                .isEqualTo(Instant.parse("2024-05-10T05:30:00Z"));
+        assertThat(SitemapReader.parseLastmod("вчера")).isNull();
+    }
+
+    @Test
+    void pageWithLastmodOnPreviousCrawlDayIsFetched() {
+        IndexerExecutor executor = new IndexerExecutor();
+        executor.setPreviousCrawlTime(Instant.parse("2024-05-10T09:00:00Z"));
+        executor.setSitemapLastmod(Map.of(
+                "/same-day", SitemapReader.parseLastmod("2024-05-10"),
+                "/days-before", SitemapReader.parseLastmod("2024-05-08"),
+                "/later-that-day", SitemapReader.parseLastmod("2024-05-10T15:00:00Z"),
+                "/earlier-that-day", SitemapReader.parseLastmod("2024-05-10T06:00:00Z")));
+
+        assertThat(executor.isUnchangedSincePreviousCrawl("/same-day")).isFalse();
+        assertThat(executor.isUnchangedSincePreviousCrawl("/later-that-day")).isFalse();
+        assertThat(executor.isUnchangedSincePreviousCrawl("/days-before")).isTrue();
+        assertThat(executor.isUnchangedSincePreviousCrawl("/earlier-that-day")).isTrue();
+        assertThat(executor.isUnchangedSincePreviousCrawl("/not-in-sitemap")).isFalse();
+    }
+
+    @Test
+    void finishedCrawlStampsStatusTime(@TempDir Path checkpointDir) throws Exception {
+        SiteEntity siteEntity = new SiteEntity();
+        siteEntity.setId(1L);
+        siteEntity.setUrl("https://example.com/");
+        siteEntity.setStatus(Status.INDEXING);
+        siteEntity.setStatusTime(LocalDateTime.now().minusHours(5));
+        SiteIndexer siteIndexer = new SiteIndexer();
+        siteIndexer.setSiteEntity(siteEntity);
+        siteIndexer.setSiteRepository(mock(SiteRepository.class));
+        siteIndexer.setLemmaDictionary(mock(LemmaDictionary.class));
+        siteIndexer.setCheckpoint(new CrawlCheckpoint(checkpointDir, 1L));
+        LocalDateTime before = LocalDateTime.now();
+
+        siteIndexer.finishIndexing(new IndexerExecutor());
+
+        assertThat(siteEntity.getStatus()).isEqualTo(Status.INDEXED);
+        assertThat(siteEntity.getStatusTime()).isAfterOrEqualTo(before);
+    }
+}
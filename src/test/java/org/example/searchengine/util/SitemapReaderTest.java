@@ -0,0 +1,42 @@
+package org.example.searchengine.util;
+
+import org.example.searchengine.config.RequestSettings;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SitemapReaderTest {
+    private static final String SITE_URL = "https://example.com/";
+
+    @Test
+    void relativeSitemapUrlIsResolvedAgainstBase() {
+        assertThat(SitemapReader.resolve(SITE_URL, "/sitemap.xml")).isEqualTo("https://example.com/sitemap.xml");
+        assertThat(SitemapReader.resolve("https://example.com/maps/index.xml", "part-1.xml"))
+                .isEqualTo("https://example.com/maps/part-1.xml");
+        assertThat(SitemapReader.resolve(SITE_URL, "https://cdn.example.com/sitemap.xml"))
+                .isEqualTo("https://cdn.example.com/sitemap.xml");
+    }
+
+    @Test
+    void malformedSitemapUrlIsRejected() {
+        assertThat(SitemapReader.resolve(SITE_URL, "http://")).isNull();
+        assertThat(SitemapReader.resolve(SITE_URL, "https://exa mple.com/sitemap.xml")).isNull();
+        assertThat(SitemapReader.resolve(SITE_URL, "ftp://example.com/sitemap.xml")).isNull();
+        assertThat(SitemapReader.resolve(SITE_URL, "mailto:admin@example.com")).isNull();
+    }
+
+    @Test
+    void badSitemapUrlsAreSkippedWithoutRequests() {
+        HostRateLimiter hostRateLimiter = mock(HostRateLimiter.class);
+        SitemapReader reader = new SitemapReader(new RequestSettings(), hostRateLimiter, 100, SITE_URL);
+
+        List<SitemapReader.SitemapEntry> entries = reader.read(List.of("http://", "ftp://example.com/sitemap.xml"));
+
+        assertThat(entries).isEmpty();
+        verifyNoInteractions(hostRateLimiter);
+    }
+}
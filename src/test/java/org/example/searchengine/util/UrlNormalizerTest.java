@@ -0,0 +1,83 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlNormalizerTest {
+    private static final String SITE_URL = "https://example.com/";
+
+    @Test
+    void normalizeLowersSchemeAndHostButNotPath() {
+        assertThat(UrlNormalizer.normalize("HTTPS://Example.COM/News/Item"))
+                .isEqualTo("https://example.com/News/Item");
+    }
+
+    @Test
+    void normalizeDropsDefaultAndEmptyPorts() {
+        assertThat(UrlNormalizer.normalize("https://example.com:443/a")).isEqualTo("https://example.com/a");
+        assertThat(UrlNormalizer.normalize("http://example.com:80/a")).isEqualTo("http://example.com/a");
+        assertThat(UrlNormalizer.normalize("https://example.com:/a")).isEqualTo("https://example.com/a");
+        assertThat(UrlNormalizer.normalize("https://example.com:80/a")).isEqualTo("https://example.com:80/a");
+        assertThat(UrlNormalizer.normalize("http://example.com:8080/a")).isEqualTo("http://example.com:8080/a");
+    }
+
+    @Test
+    void normalizeAddsMissingPath() {
+        assertThat(UrlNormalizer.normalize("https://example.com")).isEqualTo("https://example.com/");
+        assertThat(UrlNormalizer.normalize("https://example.com?page=2")).isEqualTo("https://example.com/");
+        assertThat(UrlNormalizer.normalize("https://example.com/")).isEqualTo("https://example.com/");
+    }
+
+    @Test
+    void normalizeStripsQueryAndFragment() {
+        assertThat(UrlNormalizer.normalize("https://example.com/a?b=1#c")).isEqualTo("https://example.com/a");
+        assertThat(UrlNormalizer.normalize("https://example.com/a#c?b=1")).isEqualTo("https://example.com/a");
+        assertThat(UrlNormalizer.normalize("https://example.com/a/")).isEqualTo("https://example.com/a/");
+    }
+
+    @Test
+    void normalizeReturnsSameInstanceForCanonicalUrl() {
+        String url = "https://example.com/a/b";
+
+        assertThat(UrlNormalizer.normalize(url)).isSameAs(url);
+    }
+
+    @Test
+    void normalizeRejectsOtherSchemesAndMissingHost() {
+        assertThat(UrlNormalizer.normalize("ftp://example.com/a")).isNull();
+        assertThat(UrlNormalizer.normalize("mailto:info@example.com")).isNull();
+        assertThat(UrlNormalizer.normalize("/relative")).isNull();
+        assertThat(UrlNormalizer.normalize("https:///a")).isNull();
+    }
+
+    @Test
+    void relUrlAndRootUrl() {
+        assertThat(UrlNormalizer.getRelUrl("https://example.com/a/b?c=1")).isEqualTo("/a/b");
+        assertThat(UrlNormalizer.getRelUrl("https://example.com")).isEqualTo("/");
+        assertThat(UrlNormalizer.getRootUrl("HTTPS://Example.com:443/a/b")).isEqualTo("https://example.com/");
+        assertThat(UrlNormalizer.getRootUrl("http://example.com:8080")).isEqualTo("http://example.com:8080/");
+        assertThat(UrlNormalizer.getRootUrl("ftp://example.com/")).isEmpty();
+    }
+
+    @Test
+    void pageLinkFiltersByFileExtension() {
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/")).isTrue();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/news")).isTrue();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/news/")).isTrue();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/v1.2/news")).isTrue();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/news/item.html")).isTrue();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/files/report.pdf")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/images/logo.png")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com/news/item.htm")).isFalse();
+    }
+
+    @Test
+    void pageLinkRejectsForeignHostsAndSubdomains() {
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://other.com/news")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://blog.example.com/news")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "https://example.com.evil.org/news")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, "http://example.com/news")).isFalse();
+        assertThat(UrlNormalizer.isPageLink(SITE_URL, null)).isFalse();
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VisitedUrlSetTest {
+
+    @Test
+    void addReportsFirstOccurrenceOnly() {
+        VisitedUrlSet urls = new VisitedUrlSet();
+
+        assertThat(urls.add("/a")).isTrue();
+        assertThat(urls.add("/a")).isFalse();
+        assertThat(urls.contains("/a")).isTrue();
+        assertThat(urls.contains("/b")).isFalse();
+        assertThat(urls.size()).isEqualTo(1);
+    }
+
+    /**
+     * Потоки добавляют пересекающиеся наборы адресов, сегменты при этом многократно
+     * удваиваются: каждый адрес должен быть добавлен ровно одним потоком.
+     */
+    @Test
+    void concurrentAddsAcrossResizes() throws Exception {
+        int threadCount = 8;
+        int distinctUrls = 200_000;
+        VisitedUrlSet urls = new VisitedUrlSet();
+        AtomicIntegerArray added = new AtomicIntegerArray(distinctUrls);
+        CyclicBarrier start = new CyclicBarrier(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                int offset = t * distinctUrls / threadCount;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // каждый поток обходит все адреса, начиная со своего места
+                    for (int i = 0; i < distinctUrls; i++) {
+                        int url = (offset + i) % distinctUrls;
+                        if (urls.add("/page/" + url)) {
+                            added.incrementAndGet(url);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < distinctUrls; i++) {
+            assertThat(added.get(i)).as("/page/" + i).isEqualTo(1);
+            assertThat(urls.contains("/page/" + i)).isTrue();
+        }
+        assertThat(urls.size()).isEqualTo(distinctUrls);
+    }
+
+    @Test
+    void concurrentAddsFromVirtualThreads() throws Exception {
+        int distinctUrls = 50_000;
+        VisitedUrlSet urls = new VisitedUrlSet();
+        AtomicIntegerArray added = new AtomicIntegerArray(distinctUrls);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < 64; t++) {
+                int offset = t * 7919;
+                executor.submit(() -> {
+                    for (int i = 0; i < distinctUrls; i += 3) {
+                        int url = (offset + i) % distinctUrls;
+                        if (urls.add("/v/" + url)) {
+                            added.incrementAndGet(url);
+                        }
+                    }
+                });
+            }
+        }
+
+        int expected = 0;
+        for (int i = 0; i < distinctUrls; i++) {
+            assertThat(added.get(i)).isLessThanOrEqualTo(1);
+            expected += added.get(i);
+            assertThat(urls.contains("/v/" + i)).isEqualTo(added.get(i) == 1);
+        }
+        assertThat(urls.size()).isEqualTo(expected);
+    }
+
+    @Test
+    void forEachFingerprintVisitsEveryUrl() {
+        VisitedUrlSet urls = new VisitedUrlSet();
+        for (int i = 0; i < 10_000; i++) {
+            urls.add("/page/" + i);
+        }
+        VisitedUrlSet copy = new VisitedUrlSet();
+
+        urls.forEachFingerprint(copy::addFingerprint);
+
+        assertThat(copy.size()).isEqualTo(urls.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(copy.contains("/page/" + i)).isTrue();
+        }
+    }
+}